@@ -0,0 +1,17 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.catalog")
+@Data
+public class CatalogProperties {
+
+    /**
+     * 商品快照最长使用时间（秒），防止漏收失效通知后一直使用旧数据
+     */
+    private long maxAgeSeconds = 600;
+
+}
@@ -0,0 +1,57 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cache.dish")
+@Data
+public class DishCacheProperties {
+
+    /**
+     * 本地缓存最多保存的分类数
+     */
+    private long localMaximumSize = 1000;
+
+    /**
+     * 本地缓存写入后的过期时间（秒），兜底失效通知丢失的情况
+     */
+    private long localExpireSeconds = 60;
+
+    /**
+     * Redis缓存的过期时间（秒），清理缓存之前开始的查询可能把旧数据写回Redis，过期后自动重建
+     */
+    private long redisExpireSeconds = 1800;
+
+    /**
+     * 清理缓存后再次清理的延迟（毫秒），清除其他节点在清理前开始的查询写回Redis的旧数据，0表示不再次清理
+     */
+    private long delayedEvictMillis = 1000;
+
+    /**
+     * 是否启用Redis分布式锁，集群内同一分类同时只有一个节点查询数据库
+     */
+    private boolean lockEnabled = false;
+
+    /**
+     * 分布式锁的过期时间（毫秒）
+     */
+    private long lockTimeoutMillis = 5000;
+
+    /**
+     * 未抢到锁时等待其他节点重建缓存的最长时间（毫秒），超时后直接查询数据库
+     */
+    private long lockWaitMillis = 2000;
+
+    /**
+     * 是否启用过期数据兜底：本地缓存过期或被清理后，重建期间先返回旧数据，由后台线程刷新
+     */
+    private boolean staleWhileRevalidate = false;
+
+    /**
+     * 本地缓存过期后旧数据还能继续使用的时间（秒）
+     */
+    private long staleSeconds = 30;
+
+}
@@ -0,0 +1,17 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.job.lease")
+@Data
+public class JobLeaseProperties {
+
+    /**
+     * 是否使用Redis保存任务租约，关闭时使用本机内存（只适用于单节点部署）
+     */
+    private boolean redisEnabled = true;
+
+}
@@ -0,0 +1,24 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order.fee")
+@Data
+public class OrderFeeProperties {
+
+    /**
+     * 每份商品的打包费（元）
+     */
+    private int packFeePerItem = 1;
+
+    /**
+     * 配送费（元）
+     */
+    private BigDecimal deliveryFee = new BigDecimal(6);
+
+}
@@ -0,0 +1,17 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order.status-count")
+@Data
+public class OrderStatusCountProperties {
+
+    /**
+     * 是否使用Redis保存各状态订单数量，关闭时保存在本机内存（只适用于单节点部署）
+     */
+    private boolean redisEnabled = true;
+
+}
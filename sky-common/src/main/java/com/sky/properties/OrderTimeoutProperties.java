@@ -0,0 +1,27 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order.timeout")
+@Data
+public class OrderTimeoutProperties {
+
+    /**
+     * 待付款订单的超时时间（分钟）
+     */
+    private long paymentMinutes = 15;
+
+    /**
+     * 是否使用Redis延时队列，集群部署时开启，否则使用本机时间轮
+     */
+    private boolean redisEnabled = false;
+
+    /**
+     * 每次从Redis延时队列中取出的最大订单数
+     */
+    private int redisBatchSize = 100;
+
+}
@@ -0,0 +1,37 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.report.export")
+@Data
+public class ReportExportProperties {
+
+    /**
+     * 同时进行的导出任务上限（同步导出和异步任务共用）
+     */
+    private int maxConcurrent = 2;
+
+    /**
+     * SXSSF内存中保留的行数，超出的行写入临时文件
+     */
+    private int rowWindow = 200;
+
+    /**
+     * 异步导出文件的存放目录
+     */
+    private String dir = System.getProperty("java.io.tmpdir") + "/sky-report-export";
+
+    /**
+     * 异步导出文件的保留时间（分钟），过期后删除
+     */
+    private long fileTtlMinutes = 60;
+
+    /**
+     * 单次导出允许的最大天数
+     */
+    private int maxRangeDays = 366;
+
+}
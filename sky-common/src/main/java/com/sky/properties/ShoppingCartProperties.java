@@ -0,0 +1,27 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.shopping-cart")
+@Data
+public class ShoppingCartProperties {
+
+    /**
+     * 是否使用Redis保存购物车，关闭时直接读写shopping_cart表
+     */
+    private boolean redisEnabled = true;
+
+    /**
+     * 购物车在Redis中的过期时间（天），每次修改后重新计算
+     */
+    private long expireDays = 7;
+
+    /**
+     * 每次写回数据库最多处理的用户数
+     */
+    private int flushBatchSize = 200;
+
+}
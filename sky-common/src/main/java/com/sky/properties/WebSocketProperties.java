@@ -0,0 +1,112 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.websocket")
+@Data
+public class WebSocketProperties {
+
+    /**
+     * 慢客户端处理策略：丢弃最早的消息
+     */
+    public static final String POLICY_DROP_OLDEST = "drop-oldest";
+
+    /**
+     * 慢客户端处理策略：断开连接，由客户端重连
+     */
+    public static final String POLICY_DISCONNECT = "disconnect";
+
+    /**
+     * 每个连接最多积压的消息数
+     */
+    private int queueCapacity = 256;
+
+    /**
+     * 单条消息发送超时时间（毫秒）
+     */
+    private long sendTimeoutMillis = 5000;
+
+    /**
+     * 消息积压满时的处理策略：drop-oldest 或 disconnect
+     */
+    private String slowConsumerPolicy = POLICY_DROP_OLDEST;
+
+    /**
+     * 发送消息的线程数
+     */
+    private int senderThreads = 2;
+
+    /**
+     * 是否通过Redis发布订阅把消息转发给集群中的其他节点
+     */
+    private boolean clusterEnabled = true;
+
+    /**
+     * 建立连接时是否必须携带有效的jwt令牌，为false时未携带令牌的连接按商家端处理
+     */
+    private boolean requireToken = false;
+
+    /**
+     * 消息合并的时间窗口（毫秒），窗口内同一频道的消息合并成一个JSON数组发送，0表示不合并
+     */
+    private long coalesceWindowMillis = 200;
+
+    /**
+     * 一次合并的最大消息数，达到后立即发送
+     */
+    private int coalesceMaxBatch = 50;
+
+    /**
+     * 同一订单催单的去重时间（秒），时间内重复催单不再推送给商家端
+     */
+    private long reminderDedupSeconds = 60;
+
+    /**
+     * 是否允许客户端协商permessage-deflate压缩
+     */
+    private boolean compressionEnabled = true;
+
+    /**
+     * 每个频道在内存中保留的最近消息数，用于客户端重连后补发，0表示不保留
+     */
+    private int replayBufferSize = 256;
+
+    /**
+     * 内存中最多保留消息的频道数
+     */
+    private long replayMaxChannels = 10000;
+
+    /**
+     * 频道消息的保留时间（分钟），超过时间没有新消息和补发的频道被清理
+     */
+    private long replayExpireMinutes = 30;
+
+    /**
+     * 是否把消息同时写入Redis Stream，连接到其他节点或节点重启后也能补发
+     */
+    private boolean replayStreamEnabled = false;
+
+    /**
+     * 心跳间隔（毫秒），超过间隔没有收到客户端pong或消息的连接会收到ping
+     */
+    private long heartbeatIntervalMillis = 30000;
+
+    /**
+     * 连续多少次没有回应心跳后回收连接
+     */
+    private int maxMissedPongs = 2;
+
+    /**
+     * 发送ping和关闭回收连接的线程数，与发送消息的线程分开，半开连接阻塞时不影响消息发送
+     */
+    private int heartbeatThreads = 2;
+
+    /**
+     * 本节点最多保持的连接数
+     */
+    private int maxSessions = 10000;
+
+}
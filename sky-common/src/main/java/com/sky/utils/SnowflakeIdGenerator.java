@@ -0,0 +1,106 @@
+package com.sky.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 雪花算法ID生成器
+ * 64位ID = 1位符号位(0) + 41位毫秒时间戳(相对EPOCH) + 10位节点ID + 12位毫秒内序列号
+ * 时间戳和序列号合并保存在一个AtomicLong中，通过CAS更新，不加锁
+ */
+public class SnowflakeIdGenerator {
+
+    /**
+     * 起始时间 2024-01-01 00:00:00 UTC
+     */
+    private static final long EPOCH = 1704067200000L;
+
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    /**
+     * 允许的最大时钟回拨（毫秒），不超过时等待时钟追上上次的时间戳，超过时拒绝生成
+     */
+    private static final long MAX_BACKWARD_MILLIS = 5000;
+
+    private final long workerId;
+
+    /**
+     * 高位为上次使用的时间戳(相对EPOCH)，低12位为序列号
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    public SnowflakeIdGenerator(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("节点ID必须在0到" + MAX_WORKER_ID + "之间：" + workerId);
+        }
+        this.workerId = workerId;
+    }
+
+    /**
+     * 生成下一个ID
+     * @return
+     */
+    public long nextId() {
+        while (true) {
+            long current = state.get();
+            long lastTimestamp = current >>> SEQUENCE_BITS;
+            long now = currentTimeMillis() - EPOCH;
+
+            long next;
+            if (now > lastTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else if (now == lastTimestamp) {
+                if ((current & SEQUENCE_MASK) == SEQUENCE_MASK) {
+                    // 本毫秒的序列号已用完，等到下一毫秒，不提前占用未来的时间戳
+                    Thread.onSpinWait();
+                    continue;
+                }
+                next = current + 1;
+            } else {
+                long backward = lastTimestamp - now;
+                if (backward > MAX_BACKWARD_MILLIS) {
+                    throw new IllegalStateException("系统时钟回拨" + backward + "毫秒，拒绝生成ID");
+                }
+                // 小幅回拨：等时钟追上上次的时间戳再继续生成
+                waitMillis(backward);
+                continue;
+            }
+
+            if (state.compareAndSet(current, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                long sequence = next & SEQUENCE_MASK;
+                return (timestamp << (WORKER_ID_BITS + SEQUENCE_BITS))
+                        | (workerId << SEQUENCE_BITS)
+                        | sequence;
+            }
+        }
+    }
+
+    /**
+     * 生成下一个ID的字符串形式
+     * @return
+     */
+    public String nextIdStr() {
+        return Long.toString(nextId());
+    }
+
+    /**
+     * 当前时间（毫秒）
+     * @return
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private void waitMillis(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待系统时钟追回时被中断", e);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.sky.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分层时间轮
+ * 第0层每格为1个tick，第n层每格为 wheelSize^n 个tick，任务先放在粗粒度的层级，
+ * 时间推进到对应格子时再下沉到更细的层级，到期后交给executor执行。
+ * 只有时间轮线程读写各层格子，其他线程提交的任务先进入队列，由时间轮线程在下一个tick取出
+ */
+@Slf4j
+public class TimingWheel {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final int levels;
+    private final Executor executor;
+
+    /**
+     * 各层的格子，第level层第index格为 buckets[level * wheelSize + index]
+     */
+    private final List<List<Timeout>> buckets;
+
+    /**
+     * 超出最高层范围的任务，最高层转完一圈时重新分配
+     */
+    private final List<Timeout> overflow = new LinkedList<>();
+
+    /**
+     * 等待加入时间轮的任务
+     */
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+    private final long startMillis;
+    private long currentTick;
+
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * @param tickMillis 每格的时间（毫秒）
+     * @param wheelSize 每层的格数
+     * @param levels 层数
+     * @param executor 执行到期任务的线程池
+     * @param name 时间轮线程名称
+     */
+    public TimingWheel(long tickMillis, int wheelSize, int levels, Executor executor, String name) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.levels = levels;
+        this.executor = executor;
+        this.buckets = new ArrayList<>(levels * wheelSize);
+        for (int i = 0; i < levels * wheelSize; i++) {
+            buckets.add(new LinkedList<>());
+        }
+        this.startMillis = System.currentTimeMillis();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 在指定时间点执行任务
+     * @param deadlineMillis 到期时间（毫秒时间戳）
+     * @param task 任务
+     * @return 可用于取消任务
+     */
+    public Timeout schedule(long deadlineMillis, Runnable task) {
+        Timeout timeout = new Timeout(deadlineMillis, task);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * 停止时间轮，未到期的任务不再执行
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long nextTickMillis = startMillis + (currentTick + 1) * tickMillis;
+            long sleepMillis = nextTickMillis - System.currentTimeMillis();
+            if (sleepMillis > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+
+            try {
+                currentTick++;
+                Timeout timeout;
+                while ((timeout = pending.poll()) != null) {
+                    place(timeout);
+                }
+                cascade();
+                expire();
+            } catch (Throwable e) {
+                log.error("时间轮推进异常", e);
+            }
+        }
+    }
+
+    /**
+     * 按到期tick把任务放到对应层级的格子
+     * @param timeout
+     */
+    private void place(Timeout timeout) {
+        if (timeout.cancelled) {
+            return;
+        }
+        long deadlineTick = Math.max(0, (timeout.deadlineMillis - startMillis + tickMillis - 1) / tickMillis);
+        if (deadlineTick <= currentTick) {
+            submit(timeout);
+            return;
+        }
+
+        long unit = 1;
+        for (int level = 0; level < levels; level++) {
+            long span = unit * wheelSize;
+            // 到期时间和当前时间在本层之上的"位"相同，说明本层转到它之前不需要再下沉
+            if (deadlineTick / span == currentTick / span) {
+                bucket(level, (int) ((deadlineTick / unit) % wheelSize)).add(timeout);
+                return;
+            }
+            unit = span;
+        }
+        overflow.add(timeout);
+    }
+
+    /**
+     * 时间推进到上层某一格的起点时，把该格的任务重新分配到下层
+     */
+    private void cascade() {
+        long topSpan = pow(wheelSize, levels);
+        if (currentTick % topSpan == 0 && !overflow.isEmpty()) {
+            List<Timeout> timeouts = new ArrayList<>(overflow);
+            overflow.clear();
+            timeouts.forEach(this::place);
+        }
+        for (int level = levels - 1; level >= 1; level--) {
+            long unit = pow(wheelSize, level);
+            if (currentTick % unit == 0) {
+                List<Timeout> bucket = bucket(level, (int) ((currentTick / unit) % wheelSize));
+                if (!bucket.isEmpty()) {
+                    List<Timeout> timeouts = new ArrayList<>(bucket);
+                    bucket.clear();
+                    timeouts.forEach(this::place);
+                }
+            }
+        }
+    }
+
+    /**
+     * 执行第0层当前格中的任务
+     */
+    private void expire() {
+        List<Timeout> bucket = bucket(0, (int) (currentTick % wheelSize));
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Timeout> timeouts = new ArrayList<>(bucket);
+        bucket.clear();
+        timeouts.forEach(this::submit);
+    }
+
+    private void submit(Timeout timeout) {
+        if (timeout.cancelled) {
+            return;
+        }
+        try {
+            executor.execute(timeout.task);
+        } catch (Exception e) {
+            log.error("时间轮任务提交失败", e);
+        }
+    }
+
+    private List<Timeout> bucket(int level, int index) {
+        return buckets.get(level * wheelSize + index);
+    }
+
+    private static long pow(long base, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
+        }
+        return result;
+    }
+
+    /**
+     * 时间轮中的一个任务
+     */
+    public static class Timeout {
+
+        private final long deadlineMillis;
+        private final Runnable task;
+        private volatile boolean cancelled;
+
+        private Timeout(long deadlineMillis, Runnable task) {
+            this.deadlineMillis = deadlineMillis;
+            this.task = task;
+        }
+
+        public long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+
+        /**
+         * 取消任务，已经开始执行的任务不受影响
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.sky.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnowflakeIdGeneratorTest {
+
+    private static final long WORKER_ID = 7;
+
+    @Test
+    void idsAreUniqueAcrossThreads() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(WORKER_ID);
+        int threads = 8;
+        int perThread = 50000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                long last = 0;
+                for (int j = 0; j < perThread; j++) {
+                    long id = generator.nextId();
+                    // 同一线程拿到的ID单调递增
+                    assertTrue(id > last);
+                    assertEquals(WORKER_ID, workerId(id));
+                    ids.add(id);
+                    last = id;
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(threads * perThread, ids.size());
+    }
+
+    @Test
+    void sequenceOverflowWaitsForNextMillisecond() {
+        long frozen = System.currentTimeMillis();
+        AtomicInteger reads = new AtomicInteger();
+        // 前5000次读取时钟都停在同一毫秒，之后前进1毫秒
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(WORKER_ID) {
+            @Override
+            protected long currentTimeMillis() {
+                return reads.incrementAndGet() <= 5000 ? frozen : frozen + 1;
+            }
+        };
+
+        long first = generator.nextId();
+        for (int i = 1; i < 4096; i++) {
+            long id = generator.nextId();
+            assertEquals(timestamp(first), timestamp(id));
+            assertEquals(i, sequence(id));
+        }
+
+        long overflow = generator.nextId();
+        assertEquals(timestamp(first) + 1, timestamp(overflow));
+        assertEquals(0, sequence(overflow));
+        // 序列号用完后一直等到时钟前进，而不是提前占用下一毫秒
+        assertEquals(5001, reads.get());
+    }
+
+    @Test
+    void smallClockRollbackWaitsForClockToCatchUp() {
+        SkewedGenerator generator = new SkewedGenerator();
+        long before = generator.nextId();
+
+        generator.skewMillis = 200;
+        long start = System.nanoTime();
+        long after = generator.nextId();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis >= 190, "回拨200毫秒时应等待时钟追回，实际等待" + elapsedMillis + "毫秒");
+        assertTrue(after > before);
+        assertTrue(timestamp(after) >= timestamp(before));
+    }
+
+    @Test
+    void largeClockRollbackIsRejected() {
+        SkewedGenerator generator = new SkewedGenerator();
+        long before = generator.nextId();
+
+        generator.skewMillis = 6000;
+        long start = System.nanoTime();
+        assertThrows(IllegalStateException.class, generator::nextId);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+
+        // 时钟恢复后继续生成
+        generator.skewMillis = 0;
+        assertTrue(generator.nextId() > before);
+    }
+
+    @Test
+    void workerIdOutOfRangeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(-1));
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_WORKER_ID + 1));
+    }
+
+    private static long timestamp(long id) {
+        return id >>> 22;
+    }
+
+    private static long workerId(long id) {
+        return (id >>> 12) & SnowflakeIdGenerator.MAX_WORKER_ID;
+    }
+
+    private static long sequence(long id) {
+        return id & 0xFFF;
+    }
+
+    /**
+     * 时钟可以被调慢的生成器，模拟系统时钟回拨
+     */
+    private static class SkewedGenerator extends SnowflakeIdGenerator {
+
+        private volatile long skewMillis;
+
+        private SkewedGenerator() {
+            super(WORKER_ID);
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return System.currentTimeMillis() - skewMillis;
+        }
+    }
+}
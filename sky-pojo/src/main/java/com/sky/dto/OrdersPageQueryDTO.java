@@ -20,4 +20,8 @@ public class OrdersPageQueryDTO implements Serializable {
     
     @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime endTime; //结束时间
+
+    private String cursor; //游标分页：上一页返回的游标，第一页不传
+
+    private Boolean withTotal; //游标分页：是否统计总记录数
 }
\ No newline at end of file
@@ -9,5 +9,7 @@ public class ShoppingCartDTO implements Serializable {
     private Long dishId;
     private Long setmealId;
     private String dishFlavor;
+    //批量添加时的数量，为空时按1计算
+    private Integer number;
 
 }
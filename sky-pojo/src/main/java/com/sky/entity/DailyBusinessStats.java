@@ -0,0 +1,49 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 每日运营数据汇总
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyBusinessStats implements Serializable {
+
+    /**
+     * 封存状态 0未封存（当天，随订单变化增量更新） 1已封存
+     */
+    public static final Integer UNSEALED = 0;
+    public static final Integer SEALED = 1;
+
+    private static final long serialVersionUID = 1L;
+
+    //统计日期
+    private LocalDate statDate;
+
+    //营业额（已完成订单金额）
+    private BigDecimal turnover;
+
+    //订单总数
+    private Integer orderCount;
+
+    //有效订单数（已完成）
+    private Integer validOrderCount;
+
+    //新增用户数
+    private Integer newUsers;
+
+    //是否已封存 0否 1是
+    private Integer sealed;
+
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,54 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 二级缓存命中统计
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheStatsVO implements Serializable {
+
+    //本地缓存命中次数
+    private Long localHits;
+
+    //本地缓存未命中次数
+    private Long localMisses;
+
+    //本地缓存命中率
+    private Double localHitRate;
+
+    //本地缓存淘汰次数
+    private Long localEvictions;
+
+    //本地缓存当前条目数
+    private Long localSize;
+
+    //Redis缓存命中次数
+    private Long redisHits;
+
+    //Redis缓存未命中次数
+    private Long redisMisses;
+
+    //Redis缓存命中率
+    private Double redisHitRate;
+
+    //收到的失效通知次数
+    private Long invalidations;
+
+    //查询数据库重建缓存的次数
+    private Long dbLoads;
+
+    //等待同一分类正在进行的重建而未查询数据库的次数
+    private Long coalescedWaits;
+
+    //重建期间返回旧数据的次数
+    private Long staleServed;
+}
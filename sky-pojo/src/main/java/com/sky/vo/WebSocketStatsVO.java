@@ -0,0 +1,57 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * WebSocket推送统计
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebSocketStatsVO implements Serializable {
+
+    //当前连接数
+    private Integer connections;
+
+    //最近一次心跳检查后仍有回应的连接数
+    private Integer liveSessions;
+
+    //没有回应心跳的连接数
+    private Integer idleSessions;
+
+    //因心跳超时或连接数达到上限被回收的连接数
+    private Long reaped;
+
+    //因连接数达到上限被拒绝的连接数
+    private Long rejected;
+
+    //所有连接积压的消息总数
+    private Integer queuedMessages;
+
+    //单个连接积压的最大消息数
+    private Integer maxQueueDepth;
+
+    //发送成功的消息数
+    private Long sent;
+
+    //发送失败的消息数
+    private Long failed;
+
+    //因积压被丢弃的消息数
+    private Long dropped;
+
+    //因积压被断开的连接数
+    private Long disconnected;
+
+    //平均发送耗时（毫秒）
+    private Double avgSendMillis;
+
+    //最大发送耗时（毫秒）
+    private Double maxSendMillis;
+}
@@ -0,0 +1,33 @@
+package com.sky.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 自定义注解，用于标识集群中同一时刻只能在一个节点上执行的定时任务
+ * 执行前需要先获取租约，没获取到（其他节点正在执行，或本节点上一次还没执行完）则跳过本次执行
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ClusterJob {
+
+    /**
+     * 任务名称，作为租约的key
+     */
+    String value();
+
+    /**
+     * 租约时长（毫秒），任务执行期间会自动续约
+     * 不立即释放时，执行结束后租约还会保留到过期，必须小于cron任务的触发间隔
+     */
+    long leaseMillis() default 60000;
+
+    /**
+     * 执行结束后是否立即释放租约
+     * cron任务各节点在同一时刻触发，保持false：租约保留到过期，触发稍晚的节点不会把同一次触发再执行一遍；
+     * fixedDelay任务各节点按各自的节奏触发，设为true：执行完立即释放，下一轮任何节点都可以接手
+     */
+    boolean releaseOnFinish() default false;
+}
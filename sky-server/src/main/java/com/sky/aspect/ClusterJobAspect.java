@@ -0,0 +1,40 @@
+package com.sky.aspect;
+
+import com.sky.annotation.ClusterJob;
+import com.sky.task.JobLeaseManager;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 集群定时任务切面：拿到租约的节点才执行任务
+ */
+@Aspect
+@Component
+@Slf4j
+public class ClusterJobAspect {
+
+    @Autowired
+    private JobLeaseManager jobLeaseManager;
+
+    @Around("@annotation(clusterJob)")
+    public Object runExclusive(ProceedingJoinPoint joinPoint, ClusterJob clusterJob) throws Throwable {
+        JobLeaseManager.Lease lease = jobLeaseManager.tryAcquire(clusterJob.value(), clusterJob.leaseMillis());
+        if (lease == null) {
+            return null;
+        }
+
+        try {
+            return joinPoint.proceed();
+        } finally {
+            jobLeaseManager.finish(lease, clusterJob.releaseOnFinish());
+            if (lease.getRenewals() > 0 || lease.getRenewFailures() > 0) {
+                log.info("任务{}执行结束，耗时{}ms，续约成功{}次，续约失败{}次", lease.getJob(),
+                        System.currentTimeMillis() - lease.getAcquiredAt(), lease.getRenewals(), lease.getRenewFailures());
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.sky.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.constant.StatusConstant;
+import com.sky.entity.Dish;
+import com.sky.entity.DishFlavor;
+import com.sky.entity.Setmeal;
+import com.sky.mapper.DishFlavorMapper;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.properties.CatalogProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 商品快照
+ * 内存中保存全部菜品、套餐和菜品口味的只读快照，购物车和下单时查询名称、图片、单价和起售状态不再访问数据库；
+ * 管理端修改菜品或套餐后标记快照失效（通过Redis发布订阅通知其他节点），下次使用时整体重建一个新版本的快照
+ */
+@Component
+@Slf4j
+public class CatalogSnapshot implements MessageListener {
+
+    /**
+     * 商品快照失效通知的频道
+     */
+    public static final String INVALIDATE_CHANNEL = "catalog_invalidate";
+
+    /**
+     * 当前节点标识，用于忽略自己发出的失效通知
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    private DishMapper dishMapper;
+    @Autowired
+    private SetmealMapper setmealMapper;
+    @Autowired
+    private DishFlavorMapper dishFlavorMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private CatalogProperties catalogProperties;
+
+    private volatile Catalog current;
+
+    /**
+     * 快照是否已失效
+     */
+    private volatile boolean stale = true;
+
+    /**
+     * 获取当前快照，快照失效或超过最长使用时间时重建
+     * @return
+     */
+    public Catalog get() {
+        Catalog catalog = current;
+        if (catalog != null && !stale && !catalog.isExpired(catalogProperties.getMaxAgeSeconds())) {
+            return catalog;
+        }
+        return rebuild();
+    }
+
+    /**
+     * 标记快照失效，并通知其他节点
+     */
+    public void invalidate() {
+        stale = true;
+        JSONObject message = new JSONObject();
+        message.put("nodeId", nodeId);
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, message.toJSONString());
+        } catch (RuntimeException e) {
+            // 其他节点最迟在快照超过最长使用时间后重建
+            log.warn("发送商品快照失效通知失败", e);
+        }
+        log.info("商品快照已失效");
+    }
+
+    /**
+     * 收到其他节点的失效通知
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        JSONObject body = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (nodeId.equals(body.getString("nodeId"))) {
+            return;
+        }
+        stale = true;
+    }
+
+    private synchronized Catalog rebuild() {
+        Catalog catalog = current;
+        if (catalog != null && !stale && !catalog.isExpired(catalogProperties.getMaxAgeSeconds())) {
+            // 其他线程已经重建过了
+            return catalog;
+        }
+        // 先清除失效标记再加载，加载期间收到的失效通知会让下一次使用时再次重建
+        stale = false;
+
+        List<Dish> dishes = dishMapper.list(new Dish());
+        List<Setmeal> setmeals = setmealMapper.list(new Setmeal());
+        List<Long> dishIds = new ArrayList<>(dishes.size());
+        for (Dish dish : dishes) {
+            dishIds.add(dish.getId());
+        }
+        List<DishFlavor> flavors = dishIds.isEmpty() ? Collections.emptyList() : dishFlavorMapper.getByDishIds(dishIds);
+
+        long version = catalog == null ? 1 : catalog.getVersion() + 1;
+        current = new Catalog(version, dishes, setmeals, flavors);
+        log.info("重建商品快照，版本：{}，菜品数：{}，套餐数：{}", version, dishes.size(), setmeals.size());
+        return current;
+    }
+
+    /**
+     * 某一版本的商品快照，创建后不再修改，返回的对象由所有请求共享，使用方不能修改
+     */
+    public static final class Catalog {
+
+        private final long version;
+        private final long builtAtMillis = System.currentTimeMillis();
+        private final Map<Long, Dish> dishMap;
+        private final Map<Long, Setmeal> setmealMap;
+        private final Map<Long, List<DishFlavor>> flavorMap;
+
+        private Catalog(long version, List<Dish> dishes, List<Setmeal> setmeals, List<DishFlavor> flavors) {
+            this.version = version;
+            Map<Long, Dish> dishMap = new HashMap<>();
+            for (Dish dish : dishes) {
+                dishMap.put(dish.getId(), dish);
+            }
+            Map<Long, Setmeal> setmealMap = new HashMap<>();
+            for (Setmeal setmeal : setmeals) {
+                setmealMap.put(setmeal.getId(), setmeal);
+            }
+            Map<Long, List<DishFlavor>> flavorMap = new HashMap<>();
+            for (DishFlavor flavor : flavors) {
+                flavorMap.computeIfAbsent(flavor.getDishId(), key -> new ArrayList<>()).add(flavor);
+            }
+            flavorMap.replaceAll((key, value) -> Collections.unmodifiableList(value));
+            this.dishMap = Collections.unmodifiableMap(dishMap);
+            this.setmealMap = Collections.unmodifiableMap(setmealMap);
+            this.flavorMap = Collections.unmodifiableMap(flavorMap);
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * 根据ID查询菜品
+         * @param id
+         * @return 菜品不存在时返回null
+         */
+        public Dish getDish(Long id) {
+            return dishMap.get(id);
+        }
+
+        /**
+         * 根据ID查询套餐
+         * @param id
+         * @return 套餐不存在时返回null
+         */
+        public Setmeal getSetmeal(Long id) {
+            return setmealMap.get(id);
+        }
+
+        /**
+         * 查询菜品的口味
+         * @param dishId
+         * @return
+         */
+        public List<DishFlavor> getFlavors(Long dishId) {
+            return flavorMap.getOrDefault(dishId, Collections.emptyList());
+        }
+
+        /**
+         * 菜品是否存在且起售中
+         * @param id
+         * @return
+         */
+        public boolean isDishOnSale(Long id) {
+            Dish dish = dishMap.get(id);
+            return dish != null && StatusConstant.ENABLE.equals(dish.getStatus());
+        }
+
+        /**
+         * 套餐是否存在且起售中
+         * @param id
+         * @return
+         */
+        public boolean isSetmealOnSale(Long id) {
+            Setmeal setmeal = setmealMap.get(id);
+            return setmeal != null && StatusConstant.ENABLE.equals(setmeal.getStatus());
+        }
+
+        private boolean isExpired(long maxAgeSeconds) {
+            return System.currentTimeMillis() - builtAtMillis > maxAgeSeconds * 1000;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package com.sky.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.sky.properties.DishCacheProperties;
+import com.sky.vo.CacheStatsVO;
+import com.sky.vo.DishVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 用户端菜品缓存：本地Caffeine(L1) + Redis(L2)
+ * 管理端修改菜品后删除Redis中对应分类的key，并通过Redis发布订阅通知所有节点清理本地缓存
+ * 缓存未命中时同一分类在本节点只有一个线程查询数据库，其余线程等待同一个结果
+ */
+@Component
+@Slf4j
+public class DishCache implements MessageListener {
+
+    /**
+     * Redis中菜品缓存key的前缀，例如：dish_10
+     */
+    public static final String KEY_PREFIX = "dish_";
+
+    /**
+     * 缓存失效通知的频道
+     */
+    public static final String INVALIDATE_CHANNEL = "dish_cache_invalidate";
+
+    /**
+     * 重建缓存分布式锁key的前缀，例如：lock:dish_10
+     */
+    private static final String LOCK_PREFIX = "lock:";
+
+    /**
+     * 未抢到锁时轮询Redis的间隔（毫秒）
+     */
+    private static final long LOCK_POLL_MILLIS = 50;
+
+    /**
+     * 只有锁的持有者才能释放锁
+     */
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    /**
+     * 当前节点标识，用于区分失效通知是否由本节点发出
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private DishCacheProperties dishCacheProperties;
+
+    private Cache<Long, List<DishVO>> localCache;
+
+    /**
+     * 每个分类最近一次加载的数据，比本地缓存多保留staleSeconds，
+     * 本地缓存过期或被清理后用于兜底，仅在开启过期数据兜底时使用
+     */
+    private Cache<Long, List<DishVO>> staleCache;
+
+    /**
+     * 正在重建的分类，同一分类的并发请求共用一个结果
+     */
+    private final ConcurrentHashMap<Long, CompletableFuture<List<DishVO>>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 每个分类的版本号，每次清理加一，加载前后版本号不一致说明查到的可能是旧数据，不回填缓存
+     */
+    private final ConcurrentHashMap<Long, Long> generations = new ConcurrentHashMap<>();
+
+    /**
+     * 后台刷新旧数据的线程池
+     */
+    private ExecutorService refreshExecutor;
+
+    /**
+     * 延迟再次清理缓存的线程
+     */
+    private ScheduledExecutorService evictScheduler;
+
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder redisMisses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder dbLoads = new LongAdder();
+    private final LongAdder coalescedWaits = new LongAdder();
+    private final LongAdder staleServed = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(dishCacheProperties.getLocalMaximumSize())
+                .expireAfterWrite(dishCacheProperties.getLocalExpireSeconds(), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        staleCache = Caffeine.newBuilder()
+                .maximumSize(dishCacheProperties.getLocalMaximumSize())
+                .expireAfterWrite(dishCacheProperties.getLocalExpireSeconds() + dishCacheProperties.getStaleSeconds(),
+                        TimeUnit.SECONDS)
+                .build();
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        // 队列满时由调用线程自己刷新，退化为同步加载
+        refreshExecutor = new ThreadPoolExecutor(1, 2, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(100),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "dish-cache-refresh-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        evictScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dish-cache-evict");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+        evictScheduler.shutdownNow();
+    }
+
+    /**
+     * 依次查询本地缓存、Redis，都未命中时调用loader查询数据库并回填两级缓存
+     * @param categoryId 分类ID
+     * @param loader 数据库查询
+     * @return
+     */
+    public List<DishVO> get(Long categoryId, Supplier<List<DishVO>> loader) {
+        List<DishVO> list = localCache.getIfPresent(categoryId);
+        if (list != null) {
+            return list;
+        }
+
+        if (dishCacheProperties.isStaleWhileRevalidate()) {
+            List<DishVO> stale = staleCache.getIfPresent(categoryId);
+            if (stale != null) {
+                staleServed.increment();
+                refreshAsync(categoryId, loader);
+                return stale;
+            }
+        }
+        return loadShared(categoryId, loader);
+    }
+
+    /**
+     * 清理指定分类的缓存，并通知其他节点清理本地缓存
+     * 其他节点在清理前开始的查询可能在清理后才把旧数据写回Redis，延迟一段时间后再清理一次
+     * @param categoryIds 分类ID
+     */
+    public void evict(Collection<Long> categoryIds) {
+        Collection<Long> ids = distinct(categoryIds);
+        if (ids.isEmpty()) {
+            return;
+        }
+        doEvict(ids);
+        log.info("清理菜品缓存，分类ID: {}", ids);
+
+        long delay = dishCacheProperties.getDelayedEvictMillis();
+        if (delay > 0) {
+            evictScheduler.schedule(() -> {
+                try {
+                    doEvict(ids);
+                    log.info("延迟再次清理菜品缓存，分类ID: {}", ids);
+                } catch (RuntimeException e) {
+                    log.error("延迟再次清理菜品缓存失败，分类ID: {}", ids, e);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 收到失效通知，清理本地缓存
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        JSONObject body = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (nodeId.equals(body.getString("nodeId"))) {
+            // 本节点发出的通知，本地缓存已经清理过了
+            return;
+        }
+        List<Long> categoryIds = body.getJSONArray("categoryIds").toJavaList(Long.class);
+        invalidateLocal(categoryIds);
+        invalidations.increment();
+        log.info("收到菜品缓存失效通知，清理本地缓存，分类ID: {}", categoryIds);
+    }
+
+    /**
+     * 两级缓存的命中统计
+     * @return
+     */
+    public CacheStatsVO stats() {
+        CacheStats localStats = localCache.stats();
+        long hits = redisHits.sum();
+        long misses = redisMisses.sum();
+        return CacheStatsVO.builder()
+                .localHits(localStats.hitCount())
+                .localMisses(localStats.missCount())
+                .localHitRate(localStats.hitRate())
+                .localEvictions(localStats.evictionCount())
+                .localSize(localCache.estimatedSize())
+                .redisHits(hits)
+                .redisMisses(misses)
+                .redisHitRate(hits + misses == 0 ? 1.0 : (double) hits / (hits + misses))
+                .invalidations(invalidations.sum())
+                .dbLoads(dbLoads.sum())
+                .coalescedWaits(coalescedWaits.sum())
+                .staleServed(staleServed.sum())
+                .build();
+    }
+
+    /**
+     * 删除Redis中的缓存，清理本地缓存并通知其他节点
+     * @param ids
+     */
+    private void doEvict(Collection<Long> ids) {
+        List<String> keys = new ArrayList<>();
+        for (Long categoryId : ids) {
+            keys.add(KEY_PREFIX + categoryId);
+        }
+        // UNLINK在后台线程回收内存，不阻塞Redis主线程
+        redisTemplate.unlink(keys);
+        invalidateLocal(ids);
+
+        JSONObject message = new JSONObject();
+        message.put("nodeId", nodeId);
+        message.put("categoryIds", ids);
+        stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, message.toJSONString());
+    }
+
+    /**
+     * 同一分类只有一个线程执行加载，其余线程等待它的结果
+     * @param categoryId
+     * @param loader
+     * @return
+     */
+    private List<DishVO> loadShared(Long categoryId, Supplier<List<DishVO>> loader) {
+        CompletableFuture<List<DishVO>> future = new CompletableFuture<>();
+        CompletableFuture<List<DishVO>> running = inFlight.putIfAbsent(categoryId, future);
+        if (running != null) {
+            coalescedWaits.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        try {
+            List<DishVO> list = load(categoryId, loader);
+            future.complete(list);
+            return list;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(categoryId, future);
+        }
+    }
+
+    /**
+     * 后台刷新，已经有线程在重建时直接返回
+     * @param categoryId
+     * @param loader
+     */
+    private void refreshAsync(Long categoryId, Supplier<List<DishVO>> loader) {
+        CompletableFuture<List<DishVO>> future = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(categoryId, future) != null) {
+            return;
+        }
+        refreshExecutor.execute(() -> {
+            try {
+                future.complete(load(categoryId, loader));
+            } catch (RuntimeException e) {
+                log.error("后台刷新菜品缓存失败，分类ID: {}", categoryId, e);
+                future.completeExceptionally(e);
+            } finally {
+                inFlight.remove(categoryId, future);
+            }
+        });
+    }
+
+    /**
+     * 先查Redis，未命中再查询数据库，结果放入本地缓存，开启过期数据兜底时同时保留一份旧数据
+     * 加载期间分类被清理过，查到的可能是旧数据，只返回给本次请求，不回填缓存
+     * @param categoryId
+     * @param loader
+     * @return
+     */
+    private List<DishVO> load(Long categoryId, Supplier<List<DishVO>> loader) {
+        long generation = generation(categoryId);
+        String key = KEY_PREFIX + categoryId;
+        List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
+        if (list != null) {
+            redisHits.increment();
+        } else {
+            redisMisses.increment();
+            list = dishCacheProperties.isLockEnabled()
+                    ? loadWithLock(categoryId, generation, loader)
+                    : loadFromDb(categoryId, generation, loader);
+        }
+        list = Collections.unmodifiableList(list);
+        if (generation(categoryId) != generation) {
+            return list;
+        }
+
+        localCache.put(categoryId, list);
+        if (dishCacheProperties.isStaleWhileRevalidate()) {
+            staleCache.put(categoryId, list);
+        }
+        // 先写后检查：清理发生在检查之后时，清理本身会删掉刚写入的数据
+        if (generation(categoryId) != generation) {
+            localCache.asMap().remove(categoryId, list);
+            staleCache.asMap().remove(categoryId, list);
+        }
+        return list;
+    }
+
+    /**
+     * 抢到Redis锁的节点查询数据库，其余节点轮询Redis等待结果
+     * @param categoryId
+     * @param generation 开始加载时分类的版本号
+     * @param loader
+     * @return
+     */
+    private List<DishVO> loadWithLock(Long categoryId, long generation, Supplier<List<DishVO>> loader) {
+        String key = KEY_PREFIX + categoryId;
+        String lockKey = LOCK_PREFIX + key;
+        String token = nodeId + ":" + Thread.currentThread().getId();
+        Boolean locked = stringRedisTemplate.opsForValue()
+                .setIfAbsent(lockKey, token, Duration.ofMillis(dishCacheProperties.getLockTimeoutMillis()));
+        if (Boolean.TRUE.equals(locked)) {
+            try {
+                // 抢到锁之前其他节点可能已经重建完成
+                List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
+                return list != null ? list : loadFromDb(categoryId, generation, loader);
+            } finally {
+                stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + dishCacheProperties.getLockWaitMillis();
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                Thread.sleep(LOCK_POLL_MILLIS);
+                List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
+                if (list != null) {
+                    return list;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.warn("等待其他节点重建菜品缓存超时，直接查询数据库，key: {}", key);
+        return loadFromDb(categoryId, generation, loader);
+    }
+
+    /**
+     * 查询数据库并写入Redis，查询期间分类被清理过时不写入
+     * 其他节点的清理本节点要等收到通知才知道，写入的仍可能是旧数据，由延迟再次清理和过期时间兜底
+     * @param categoryId
+     * @param generation 开始加载时分类的版本号
+     * @param loader
+     * @return
+     */
+    private List<DishVO> loadFromDb(Long categoryId, long generation, Supplier<List<DishVO>> loader) {
+        String key = KEY_PREFIX + categoryId;
+        log.info("菜品缓存未命中，开始查询数据库，key: {}", key);
+        dbLoads.increment();
+        List<DishVO> list = loader.get();
+        if (generation(categoryId) != generation) {
+            log.info("查询期间菜品缓存被清理，不写回Redis，key: {}", key);
+            return list;
+        }
+        redisTemplate.opsForValue().set(key, list, Duration.ofSeconds(dishCacheProperties.getRedisExpireSeconds()));
+        if (generation(categoryId) != generation) {
+            // 写入前一刻被清理，删掉刚写入的旧数据
+            redisTemplate.unlink(key);
+        }
+        return list;
+    }
+
+    private long generation(Long categoryId) {
+        return generations.getOrDefault(categoryId, 0L);
+    }
+
+    /**
+     * 清理本地缓存，旧数据仍保留在staleCache中，开启过期数据兜底时重建期间先返回旧数据
+     * @param categoryIds
+     */
+    private void invalidateLocal(Collection<Long> categoryIds) {
+        for (Long categoryId : categoryIds) {
+            // 先加版本号再清理，正在加载的线程要么看到新版本号不回填，要么回填后被这里清理
+            generations.merge(categoryId, 1L, Long::sum);
+            localCache.invalidate(categoryId);
+            // 清理前已经开始的重建可能读到旧数据，后续请求不再等待它
+            inFlight.remove(categoryId);
+        }
+    }
+
+    private Collection<Long> distinct(Collection<Long> categoryIds) {
+        LinkedHashSet<Long> ids = new LinkedHashSet<>();
+        if (categoryIds != null) {
+            for (Long categoryId : categoryIds) {
+                if (categoryId != null) {
+                    ids.add(categoryId);
+                }
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,173 @@
+package com.sky.cache;
+
+import com.sky.dto.OrderStatusCountDTO;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderStatusCountProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 各状态订单数量计数器
+ * 订单状态变化时增量维护(Redis Hash的HINCRBY)，查询时直接读取，不再扫描orders表；
+ * 定时和数据库对账，修正异常情况下产生的偏差
+ */
+@Component
+@Slf4j
+public class OrderStatusCounter {
+
+    /**
+     * Redis中计数器的key，field为订单状态
+     */
+    private static final String KEY = "order:status_count";
+
+    /**
+     * 原子地将一个状态的数量转移到另一个状态，计数器还没有初始化时不修改，等待对账
+     */
+    private static final DefaultRedisScript<Long> MOVE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end "
+                    + "if ARGV[1] ~= '' then redis.call('hincrby', KEYS[1], ARGV[1], -tonumber(ARGV[3])) end "
+                    + "redis.call('hincrby', KEYS[1], ARGV[2], ARGV[3]) return 1",
+            Long.class);
+
+    /**
+     * 原子地用对账结果覆盖计数器
+     */
+    private static final DefaultRedisScript<Long> RESET_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('del', KEYS[1]) "
+                    + "for i = 1, #ARGV, 2 do redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) end return 1",
+            Long.class);
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderStatusCountProperties orderStatusCountProperties;
+
+    /**
+     * 关闭Redis时使用的本机计数器
+     */
+    private final Map<Integer, AtomicLong> localCounts = new ConcurrentHashMap<>();
+    private volatile boolean localInitialized = false;
+
+    /**
+     * 新增订单
+     * @param status 订单状态
+     */
+    public void created(Integer status) {
+        moved(null, status, 1);
+    }
+
+    /**
+     * 订单状态变化，在事务中调用时等事务提交后再修改计数
+     * @param fromStatus 原状态
+     * @param toStatus 新状态
+     * @param count 订单数量
+     */
+    public void moved(Integer fromStatus, Integer toStatus, long count) {
+        if (count <= 0) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(fromStatus, toStatus, count);
+                }
+            });
+        } else {
+            apply(fromStatus, toStatus, count);
+        }
+    }
+
+    /**
+     * 查询各状态的订单数量
+     * @return 订单状态 -> 数量
+     */
+    public Map<Integer, Long> snapshot() {
+        if (!orderStatusCountProperties.isRedisEnabled()) {
+            if (!localInitialized) {
+                reconcile();
+            }
+            Map<Integer, Long> counts = new HashMap<>();
+            localCounts.forEach((status, count) -> counts.put(status, count.get()));
+            return counts;
+        }
+
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(KEY);
+        if (entries.isEmpty()) {
+            // 第一次使用或Redis数据丢失，先和数据库对账
+            return reconcile();
+        }
+        Map<Integer, Long> counts = new HashMap<>();
+        entries.forEach((status, count) -> counts.put(Integer.valueOf(status.toString()), Long.valueOf(count.toString())));
+        return counts;
+    }
+
+    /**
+     * 查询指定状态的订单数量
+     * @param snapshot
+     * @param status
+     * @return
+     */
+    public static Integer count(Map<Integer, Long> snapshot, Integer status) {
+        return snapshot.getOrDefault(status, 0L).intValue();
+    }
+
+    /**
+     * 和数据库对账，用数据库的统计结果覆盖计数器
+     * 统计和覆盖之间发生的状态变化会在下一次对账时修正
+     * @return 订单状态 -> 数量
+     */
+    public Map<Integer, Long> reconcile() {
+        Map<Integer, Long> counts = new HashMap<>();
+        for (OrderStatusCountDTO statusCount : orderMapper.countGroupByStatus()) {
+            counts.put(statusCount.getStatus(), statusCount.getCount());
+        }
+
+        if (orderStatusCountProperties.isRedisEnabled()) {
+            List<String> args = new ArrayList<>();
+            counts.forEach((status, count) -> {
+                args.add(String.valueOf(status));
+                args.add(String.valueOf(count));
+            });
+            stringRedisTemplate.execute(RESET_SCRIPT, Collections.singletonList(KEY), args.toArray());
+        } else {
+            localCounts.clear();
+            counts.forEach((status, count) -> localCounts.put(status, new AtomicLong(count)));
+            localInitialized = true;
+        }
+        log.info("订单状态数量对账完成：{}", counts);
+        return counts;
+    }
+
+    private void apply(Integer fromStatus, Integer toStatus, long count) {
+        try {
+            if (orderStatusCountProperties.isRedisEnabled()) {
+                stringRedisTemplate.execute(MOVE_SCRIPT, Collections.singletonList(KEY),
+                        fromStatus == null ? "" : String.valueOf(fromStatus), String.valueOf(toStatus), String.valueOf(count));
+            } else {
+                if (fromStatus != null) {
+                    localCounts.computeIfAbsent(fromStatus, k -> new AtomicLong()).addAndGet(-count);
+                }
+                localCounts.computeIfAbsent(toStatus, k -> new AtomicLong()).addAndGet(count);
+            }
+        } catch (RuntimeException e) {
+            // 计数失败不影响订单业务，等待下一次对账修正
+            log.warn("订单状态数量更新失败，{} -> {}，数量：{}", fromStatus, toStatus, count, e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.sky.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 用户端套餐缓存(Spring Cache，Redis中的key为 setmealCache::分类ID)的按分类清理
+ */
+@Component
+@Slf4j
+public class SetmealCache {
+
+    /**
+     * 套餐缓存名称
+     */
+    public static final String CACHE_NAME = "setmealCache";
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    /**
+     * 清理指定分类的套餐缓存
+     * @param categoryIds 分类ID
+     */
+    public void evict(Collection<Long> categoryIds) {
+        Set<Long> ids = new LinkedHashSet<>();
+        if (categoryIds != null) {
+            for (Long categoryId : categoryIds) {
+                if (categoryId != null) {
+                    ids.add(categoryId);
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        for (Long categoryId : ids) {
+            cache.evict(categoryId);
+        }
+        log.info("清理套餐缓存，分类ID: {}", ids);
+    }
+}
@@ -0,0 +1,368 @@
+package com.sky.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.ShoppingCartProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Redis购物车
+ * 每个用户两个Hash：cart:{userId}保存每个商品的数量，cart:item:{userId}保存商品名称、图片、单价等信息，
+ * field为 d:菜品ID:口味 或 s:套餐ID；加减数量都由Lua脚本原子完成，修改过的用户记录到cart:dirty，
+ * 由定时任务写回shopping_cart表（write-behind）。
+ * 两个Hash中的 _ 字段都存在表示购物车已经从数据库加载，缺少任意一个（例如其中一个Hash过期）时先从数据库加载再操作
+ */
+@Component
+@Slf4j
+public class ShoppingCartStore {
+
+    private static final String COUNT_KEY_PREFIX = "cart:";
+    private static final String ITEM_KEY_PREFIX = "cart:item:";
+
+    /**
+     * 有修改、等待写回数据库的用户ID
+     */
+    private static final String DIRTY_KEY = "cart:dirty";
+
+    /**
+     * 购物车已加载标记
+     */
+    private static final String LOADED_FIELD = "_";
+
+    /**
+     * 脚本返回值：购物车还没有加载
+     */
+    private static final long NOT_LOADED = -2;
+
+    /**
+     * 脚本返回值：新商品需要提供商品信息
+     */
+    private static final long ITEM_REQUIRED = -1;
+
+    /**
+     * 脚本开头的加载检查，KEYS[1]为数量Hash，KEYS[2]为商品信息Hash
+     */
+    private static final String LOADED_CHECK =
+            "if redis.call('hexists', KEYS[1], '" + LOADED_FIELD + "') == 0 "
+                    + "or redis.call('hexists', KEYS[2], '" + LOADED_FIELD + "') == 0 then return " + NOT_LOADED + " end ";
+
+    /**
+     * 数量加一，新商品需要同时写入商品信息
+     * KEYS: 数量Hash、商品信息Hash、待写回集合；ARGV: field、商品信息JSON（可为空）、用户ID、过期秒数
+     */
+    private static final DefaultRedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>(
+            LOADED_CHECK
+                    + "if redis.call('hexists', KEYS[2], ARGV[1]) == 0 then "
+                    + "  if ARGV[2] == '' then return " + ITEM_REQUIRED + " end "
+                    + "  redis.call('hset', KEYS[2], ARGV[1], ARGV[2]) "
+                    + "end "
+                    + "local n = redis.call('hincrby', KEYS[1], ARGV[1], 1) "
+                    + "redis.call('expire', KEYS[1], ARGV[4]) redis.call('expire', KEYS[2], ARGV[4]) "
+                    + "redis.call('sadd', KEYS[3], ARGV[3]) "
+                    + "return n",
+            Long.class);
+
+    /**
+     * 数量减一，减到0时删除商品
+     * KEYS: 数量Hash、商品信息Hash、待写回集合；ARGV: field、用户ID、过期秒数
+     */
+    private static final DefaultRedisScript<Long> SUB_SCRIPT = new DefaultRedisScript<>(
+            LOADED_CHECK
+                    + "local n = tonumber(redis.call('hget', KEYS[1], ARGV[1]) or '0') "
+                    + "if n <= 0 then return 0 end "
+                    + "if n == 1 then redis.call('hdel', KEYS[1], ARGV[1]) redis.call('hdel', KEYS[2], ARGV[1]) "
+                    + "else redis.call('hincrby', KEYS[1], ARGV[1], -1) end "
+                    + "redis.call('expire', KEYS[1], ARGV[3]) redis.call('expire', KEYS[2], ARGV[3]) "
+                    + "redis.call('sadd', KEYS[3], ARGV[2]) "
+                    + "return n - 1",
+            Long.class);
+
+    /**
+     * 批量加入商品，已存在的商品只累加数量
+     * KEYS: 数量Hash、商品信息Hash、待写回集合；ARGV: 用户ID、过期秒数，之后每三个一组：field、商品信息JSON、数量
+     */
+    private static final DefaultRedisScript<Long> ADD_BATCH_SCRIPT = new DefaultRedisScript<>(
+            LOADED_CHECK
+                    + "for i = 3, #ARGV, 3 do "
+                    + "  if redis.call('hexists', KEYS[2], ARGV[i]) == 0 then redis.call('hset', KEYS[2], ARGV[i], ARGV[i + 1]) end "
+                    + "  redis.call('hincrby', KEYS[1], ARGV[i], ARGV[i + 2]) "
+                    + "end "
+                    + "redis.call('expire', KEYS[1], ARGV[2]) redis.call('expire', KEYS[2], ARGV[2]) "
+                    + "redis.call('sadd', KEYS[3], ARGV[1]) "
+                    + "return 1",
+            Long.class);
+
+    /**
+     * 清空购物车，保留已加载标记
+     * KEYS: 数量Hash、商品信息Hash、待写回集合；ARGV: 用户ID、过期秒数
+     */
+    private static final DefaultRedisScript<Long> CLEAR_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('del', KEYS[1], KEYS[2]) "
+                    + "redis.call('hset', KEYS[1], '" + LOADED_FIELD + "', '1') redis.call('hset', KEYS[2], '" + LOADED_FIELD + "', '1') "
+                    + "redis.call('expire', KEYS[1], ARGV[2]) redis.call('expire', KEYS[2], ARGV[2]) "
+                    + "redis.call('sadd', KEYS[3], ARGV[1]) "
+                    + "return 1",
+            Long.class);
+
+    /**
+     * 从数据库加载购物车，已经加载过时不覆盖；只剩一个Hash（另一个已过期）时两个都删掉重新加载
+     * 旧版本只在商品信息Hash中写标记，数量Hash还在时补上标记，不丢弃还没写回的修改
+     * KEYS: 数量Hash、商品信息Hash；ARGV: 过期秒数，之后每三个一组：field、商品信息JSON、数量
+     */
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "local counted = redis.call('hexists', KEYS[1], '" + LOADED_FIELD + "') "
+                    + "local loaded = redis.call('hexists', KEYS[2], '" + LOADED_FIELD + "') "
+                    + "if loaded == 1 and (counted == 1 or redis.call('exists', KEYS[1]) == 1) then "
+                    + "  redis.call('hset', KEYS[1], '" + LOADED_FIELD + "', '1') "
+                    + "  redis.call('expire', KEYS[1], ARGV[1]) redis.call('expire', KEYS[2], ARGV[1]) "
+                    + "  return 0 "
+                    + "end "
+                    + "redis.call('del', KEYS[1], KEYS[2]) "
+                    + "redis.call('hset', KEYS[1], '" + LOADED_FIELD + "', '1') redis.call('hset', KEYS[2], '" + LOADED_FIELD + "', '1') "
+                    + "for i = 2, #ARGV, 3 do "
+                    + "  redis.call('hset', KEYS[2], ARGV[i], ARGV[i + 1]) "
+                    + "  redis.call('hincrby', KEYS[1], ARGV[i], ARGV[i + 2]) "
+                    + "end "
+                    + "redis.call('expire', KEYS[1], ARGV[1]) redis.call('expire', KEYS[2], ARGV[1]) "
+                    + "return 1",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+    @Autowired
+    private ShoppingCartProperties shoppingCartProperties;
+
+    /**
+     * 是否使用Redis购物车
+     * @return
+     */
+    public boolean isEnabled() {
+        return shoppingCartProperties.isRedisEnabled();
+    }
+
+    /**
+     * 商品数量加一
+     * @param item 商品（用户ID、菜品ID或套餐ID、口味）
+     * @param itemLoader 购物车中还没有该商品时用于补全名称、图片、单价
+     * @return 加一后的数量
+     */
+    public long add(ShoppingCart item, Consumer<ShoppingCart> itemLoader) {
+        Long userId = item.getUserId();
+        String field = field(item);
+        String itemJson = "";
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Long result = stringRedisTemplate.execute(ADD_SCRIPT, keys(userId), field, itemJson,
+                    String.valueOf(userId), expireSeconds());
+            if (result == null || result == NOT_LOADED) {
+                load(userId);
+            } else if (result == ITEM_REQUIRED) {
+                itemLoader.accept(item);
+                item.setNumber(null);
+                item.setCreateTime(LocalDateTime.now());
+                itemJson = JSON.toJSONString(item);
+            } else {
+                return result;
+            }
+        }
+        throw new IllegalStateException("购物车更新失败，用户ID：" + userId);
+    }
+
+    /**
+     * 批量加入商品，一次脚本调用完成
+     * @param userId 用户ID
+     * @param items 已补全名称、图片、单价和数量的商品
+     */
+    public void addBatch(Long userId, List<ShoppingCart> items) {
+        List<String> args = new ArrayList<>(items.size() * 3 + 2);
+        args.add(String.valueOf(userId));
+        args.add(expireSeconds());
+        for (ShoppingCart item : items) {
+            ShoppingCart meta = new ShoppingCart();
+            BeanUtils.copyProperties(item, meta);
+            meta.setNumber(null);
+            args.add(field(item));
+            args.add(JSON.toJSONString(meta));
+            args.add(String.valueOf(item.getNumber()));
+        }
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Long result = stringRedisTemplate.execute(ADD_BATCH_SCRIPT, keys(userId), args.toArray());
+            if (result != null && result != NOT_LOADED) {
+                return;
+            }
+            load(userId);
+        }
+        throw new IllegalStateException("购物车更新失败，用户ID：" + userId);
+    }
+
+    /**
+     * 商品数量减一，减到0时删除
+     * @param item 商品（用户ID、菜品ID或套餐ID、口味）
+     * @return 减一后的数量
+     */
+    public long sub(ShoppingCart item) {
+        Long userId = item.getUserId();
+        String field = field(item);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Long result = stringRedisTemplate.execute(SUB_SCRIPT, keys(userId), field,
+                    String.valueOf(userId), expireSeconds());
+            if (result != null && result != NOT_LOADED) {
+                return result;
+            }
+            load(userId);
+        }
+        throw new IllegalStateException("购物车更新失败，用户ID：" + userId);
+    }
+
+    /**
+     * 清空购物车，在事务中调用时等事务提交后再清空，避免下单失败时购物车已经被清空
+     * @param userId 用户ID
+     */
+    public void clear(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    try {
+                        doClear(userId);
+                    } catch (RuntimeException e) {
+                        log.error("清空Redis购物车失败，用户ID：{}", userId, e);
+                    }
+                }
+            });
+        } else {
+            doClear(userId);
+        }
+    }
+
+    private void doClear(Long userId) {
+        stringRedisTemplate.execute(CLEAR_SCRIPT, keys(userId), String.valueOf(userId), expireSeconds());
+    }
+
+    /**
+     * 查询购物车，按加入时间倒序
+     * @param userId 用户ID
+     * @return
+     */
+    public List<ShoppingCart> list(Long userId) {
+        List<ShoppingCart> list = snapshot(userId);
+        if (list == null) {
+            load(userId);
+            list = snapshot(userId);
+        }
+        return list == null ? new ArrayList<>() : list;
+    }
+
+    /**
+     * 读取Redis中的购物车
+     * @param userId 用户ID
+     * @return 购物车还没有加载时返回null
+     */
+    public List<ShoppingCart> snapshot(Long userId) {
+        Map<Object, Object> items = stringRedisTemplate.opsForHash().entries(ITEM_KEY_PREFIX + userId);
+        if (!items.containsKey(LOADED_FIELD)) {
+            return null;
+        }
+        Map<Object, Object> counts = stringRedisTemplate.opsForHash().entries(COUNT_KEY_PREFIX + userId);
+        if (!counts.containsKey(LOADED_FIELD)) {
+            // 数量Hash已过期，商品信息不能单独使用
+            return null;
+        }
+        List<ShoppingCart> list = new ArrayList<>();
+        for (Map.Entry<Object, Object> entry : items.entrySet()) {
+            Object count = counts.get(entry.getKey());
+            if (LOADED_FIELD.equals(entry.getKey()) || count == null) {
+                continue;
+            }
+            ShoppingCart cart = JSON.parseObject((String) entry.getValue(), ShoppingCart.class);
+            cart.setUserId(userId);
+            cart.setNumber(Integer.valueOf((String) count));
+            list.add(cart);
+        }
+        list.sort(Comparator.comparing(ShoppingCart::getCreateTime,
+                Comparator.nullsLast(Comparator.reverseOrder())));
+        return list;
+    }
+
+    /**
+     * 取出一批等待写回数据库的用户ID
+     * @return
+     */
+    public List<Long> popDirty() {
+        List<String> userIds = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, shoppingCartProperties.getFlushBatchSize());
+        if (userIds == null || userIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> result = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            result.add(Long.valueOf(userId));
+        }
+        return result;
+    }
+
+    /**
+     * 写回失败时重新标记为待写回
+     * @param userIds
+     */
+    public void markDirty(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.opsForSet().add(DIRTY_KEY, userIds.stream().map(String::valueOf).toArray(String[]::new));
+    }
+
+    /**
+     * 从数据库加载购物车
+     * @param userId 用户ID
+     */
+    private void load(Long userId) {
+        List<ShoppingCart> list = shoppingCartMapper.list(ShoppingCart.builder().userId(userId).build());
+        List<String> args = new ArrayList<>(list.size() * 3 + 1);
+        args.add(expireSeconds());
+        for (ShoppingCart cart : list) {
+            Integer number = cart.getNumber();
+            cart.setId(null);
+            cart.setNumber(null);
+            args.add(field(cart));
+            args.add(JSON.toJSONString(cart));
+            args.add(String.valueOf(number));
+        }
+        stringRedisTemplate.execute(LOAD_SCRIPT, keys(userId).subList(0, 2), args.toArray());
+        log.info("从数据库加载购物车，用户ID：{}，商品数：{}", userId, list.size());
+    }
+
+    private List<String> keys(Long userId) {
+        return Arrays.asList(COUNT_KEY_PREFIX + userId, ITEM_KEY_PREFIX + userId, DIRTY_KEY);
+    }
+
+    private String field(ShoppingCart item) {
+        if (item.getDishId() != null) {
+            return "d:" + item.getDishId() + ":" + (item.getDishFlavor() == null ? "" : item.getDishFlavor());
+        }
+        return "s:" + item.getSetmealId();
+    }
+
+    private String expireSeconds() {
+        return String.valueOf(Duration.ofDays(shoppingCartProperties.getExpireDays()).getSeconds());
+    }
+}
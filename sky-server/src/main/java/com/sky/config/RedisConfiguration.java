@@ -1,10 +1,19 @@
 package com.sky.config;
 
+import com.sky.cache.CatalogSnapshot;
+import com.sky.cache.DishCache;
+import com.sky.websocket.WebSocketClusterBus;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.BatchStrategies;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
@@ -19,4 +28,42 @@ public class RedisConfiguration {
         redisTemplate.setKeySerializer(new StringRedisSerializer());
         return redisTemplate;
     }
-}
\ No newline at end of file
+
+    /**
+     * Spring Cache使用的缓存管理器
+     * 按缓存名称整体清理(allEntries)时默认使用KEYS命令，会阻塞Redis，这里改为SCAN分批查找后删除
+     * @param redisConnectionFactory
+     * @return
+     */
+    @Bean
+    public RedisCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory) {
+        log.info("开始创建redis缓存管理器...");
+        RedisCacheWriter cacheWriter = RedisCacheWriter.nonLockingRedisCacheWriter(
+                redisConnectionFactory, BatchStrategies.scan(1000));
+        return RedisCacheManager.builder(cacheWriter)
+                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig())
+                .build();
+    }
+
+    /**
+     * Redis消息监听容器，订阅菜品缓存失效通知、商品快照失效通知和WebSocket集群消息
+     * @param redisConnectionFactory
+     * @param dishCache
+     * @param catalogSnapshot
+     * @param webSocketClusterBus
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                       DishCache dishCache,
+                                                                       CatalogSnapshot catalogSnapshot,
+                                                                       WebSocketClusterBus webSocketClusterBus) {
+        log.info("开始创建redis消息监听容器...");
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(dishCache, new ChannelTopic(DishCache.INVALIDATE_CHANNEL));
+        container.addMessageListener(catalogSnapshot, new ChannelTopic(CatalogSnapshot.INVALIDATE_CHANNEL));
+        container.addMessageListener(webSocketClusterBus, new ChannelTopic(WebSocketClusterBus.CHANNEL));
+        return container;
+    }
+}
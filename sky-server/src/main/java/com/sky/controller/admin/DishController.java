@@ -1,5 +1,8 @@
 package com.sky.controller.admin;
 
+import com.sky.cache.CatalogSnapshot;
+import com.sky.cache.DishCache;
+import com.sky.cache.SetmealCache;
 import com.sky.dto.DishDTO;
 import com.sky.dto.DishPageQueryDTO;
 import com.sky.entity.Dish;
@@ -7,16 +10,18 @@ import com.sky.mapper.DishMapper;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.DishService;
+import com.sky.service.SetmealService;
+import com.sky.vo.CacheStatsVO;
 import com.sky.vo.DishVO;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 
 @RestController
 @RequestMapping("/admin/dish")
@@ -27,7 +32,13 @@ public class DishController {
     @Autowired
     private DishService dishService;
     @Autowired
-    private RedisTemplate redisTemplate;
+    private SetmealService setmealService;
+    @Autowired
+    private DishCache dishCache;
+    @Autowired
+    private SetmealCache setmealCache;
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
 
     /**
      * 新增菜品
@@ -39,6 +50,8 @@ public class DishController {
     public Result save(@RequestBody DishDTO dishDTO) {
         log.info("新增菜品：{}", dishDTO);
         dishService.saveWithFlavor(dishDTO);
+        dishCache.evict(Collections.singletonList(dishDTO.getCategoryId()));
+        catalogSnapshot.invalidate();
         return Result.success();
     }
 
@@ -60,9 +73,12 @@ public class DishController {
     @ApiOperation("批量删除菜品")
     public Result delete(@RequestParam List<Long> ids) {
         log.info("批量删除菜品：{}",ids);
+        // 删除前先查出菜品所属分类，只清理这些分类的缓存
+        List<Long> categoryIds = dishService.getCategoryIdsByIds(ids);
         dishService.delete(ids);
-        cleanCache("dish_*");
-        cleanCache("setmeal_*"); // 保证数据绝对一致
+        // 被套餐关联的菜品不能删除，所以不涉及套餐缓存
+        dishCache.evict(categoryIds);
+        catalogSnapshot.invalidate();
         return Result.success();
     }
 
@@ -77,8 +93,10 @@ public class DishController {
     public Result startOrStop(@PathVariable Integer status, Long id) {
         log.info("菜品起售停售：{}",status);
         dishService.startOrStop(status, id);
-        cleanCache("dish_*");
-        cleanCache("setmeal_*"); // 保证数据绝对一致
+        List<Long> ids = Collections.singletonList(id);
+        dishCache.evict(dishService.getCategoryIdsByIds(ids));
+        setmealCache.evict(setmealService.getCategoryIdsByDishIds(ids));
+        catalogSnapshot.invalidate();
         return Result.success();
     }
 
@@ -104,9 +122,13 @@ public class DishController {
     @ApiOperation("更新菜品")
     public Result update(@RequestBody DishDTO dishDTO) {
         log.info("更新菜品:{}",dishDTO);
+        // 菜品可能被修改了分类，原分类和新分类的缓存都要清理
+        List<Long> categoryIds = new ArrayList<>(dishService.getCategoryIdsByIds(Collections.singletonList(dishDTO.getId())));
         dishService.updateWithFlavor(dishDTO);
-        cleanCache("dish_*");
-        cleanCache("setmeal_*"); // 保证数据绝对一致
+        categoryIds.add(dishDTO.getCategoryId());
+        dishCache.evict(categoryIds);
+        setmealCache.evict(setmealService.getCategoryIdsByDishIds(Collections.singletonList(dishDTO.getId())));
+        catalogSnapshot.invalidate();
         return Result.success();
     }
 
@@ -124,10 +146,14 @@ public class DishController {
 
     }
 
-    private void cleanCache(String pattern){
-        Set keys = redisTemplate.keys(pattern);
-        redisTemplate.delete(keys);
-        log.info("清理 Redis 缓存，pattern: {}", pattern);
+    /**
+     * 菜品缓存命中统计
+     * @return
+     */
+    @ApiOperation("菜品缓存命中统计")
+    @GetMapping("/cache/stats")
+    public Result<CacheStatsVO> cacheStats() {
+        return Result.success(dishCache.stats());
     }
 
 }
\ No newline at end of file
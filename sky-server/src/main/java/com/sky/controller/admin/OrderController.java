@@ -4,6 +4,7 @@ import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.dto.OrdersConfirmDTO;
 import com.sky.dto.OrdersRejectionDTO;
 import com.sky.dto.OrdersCancelDTO;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
@@ -36,6 +37,19 @@ public class OrderController {
         return Result.success(pageResult);
     }
 
+    /**
+     * 游标分页条件搜索订单
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    @GetMapping("/conditionSearch/cursor")
+    @ApiOperation("游标分页条件搜索订单")
+    public Result<CursorPageResult> conditionSearchByCursor(OrdersPageQueryDTO ordersPageQueryDTO) {
+        log.info("游标分页条件搜索订单：{}", ordersPageQueryDTO);
+        CursorPageResult cursorPageResult = orderService.conditionSearchByCursor(ordersPageQueryDTO);
+        return Result.success(cursorPageResult);
+    }
+
     /**
      * 各个状态订单数量统计
      * @return
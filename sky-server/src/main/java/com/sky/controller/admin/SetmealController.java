@@ -1,5 +1,7 @@
 package com.sky.controller.admin;
 
+import com.sky.cache.CatalogSnapshot;
+import com.sky.cache.SetmealCache;
 import com.sky.dto.SetmealDTO;
 import com.sky.dto.SetmealPageQueryDTO;
 import com.sky.result.PageResult;
@@ -10,12 +12,11 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 
 @Slf4j
 @RestController
@@ -27,7 +28,10 @@ public class SetmealController {
     private SetmealService setmealService;
 
     @Autowired
-    private RedisTemplate redisTemplate;
+    private SetmealCache setmealCache;
+
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
 
     /**
      * 新增套餐
@@ -36,10 +40,11 @@ public class SetmealController {
      */
     @ApiOperation("新增套餐")
     @PostMapping
-    @CacheEvict(cacheNames = "setmealCache", allEntries = true)
     public Result save(@RequestBody SetmealDTO setmealDTO) {
         log.info("新增套餐：{}", setmealDTO);
         setmealService.savaWithDish(setmealDTO);
+        setmealCache.evict(Collections.singletonList(setmealDTO.getCategoryId()));
+        catalogSnapshot.invalidate();
         return Result.success();
     }
 
@@ -59,10 +64,13 @@ public class SetmealController {
      */
     @ApiOperation("批量删除套餐")
     @DeleteMapping
-    @CacheEvict(cacheNames = "setmealCache", allEntries = true)
     public Result delete(@RequestParam List<Long> ids) {
         log.info("批量删除套餐：{}",ids);
+        // 删除前先查出套餐所属分类，只清理这些分类的缓存
+        List<Long> categoryIds = setmealService.getCategoryIdsByIds(ids);
         setmealService.delete(ids);
+        setmealCache.evict(categoryIds);
+        catalogSnapshot.invalidate();
         return Result.success();
     }
 
@@ -73,10 +81,14 @@ public class SetmealController {
      */
     @ApiOperation("修改套餐")
     @PutMapping
-    @CacheEvict(cacheNames = "setmealCache", allEntries = true)
     public Result update(@RequestBody SetmealDTO setmealDTO) {
         log.info("修改套餐：{}", setmealDTO);
+        // 套餐可能被修改了分类，原分类和新分类的缓存都要清理
+        List<Long> categoryIds = new ArrayList<>(setmealService.getCategoryIdsByIds(Collections.singletonList(setmealDTO.getId())));
         setmealService.update(setmealDTO);
+        categoryIds.add(setmealDTO.getCategoryId());
+        setmealCache.evict(categoryIds);
+        catalogSnapshot.invalidate();
         return Result.success();
     }
 
@@ -101,10 +113,11 @@ public class SetmealController {
      */
     @PostMapping("/status/{status}")
     @ApiOperation("启用禁用套餐")
-    @CacheEvict(cacheNames = "setmealCache", allEntries = true)
     public Result startOrStop(@PathVariable Integer status, Long id) throws  Exception{
         log.info("启用禁用套餐：{}", status);
         setmealService.startOrStop(status,id);
+        setmealCache.evict(setmealService.getCategoryIdsByIds(Collections.singletonList(id)));
+        catalogSnapshot.invalidate();
         return Result.success();
     }
 }
\ No newline at end of file
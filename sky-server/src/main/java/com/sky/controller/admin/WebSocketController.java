@@ -0,0 +1,32 @@
+package com.sky.controller.admin;
+
+import com.sky.result.Result;
+import com.sky.vo.WebSocketStatsVO;
+import com.sky.websocket.WebSocketDispatcher;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/admin/ws")
+@Api(tags = "WebSocket推送相关接口")
+@Slf4j
+public class WebSocketController {
+
+    @Autowired
+    private WebSocketDispatcher webSocketDispatcher;
+
+    /**
+     * WebSocket推送统计
+     * @return
+     */
+    @GetMapping("/stats")
+    @ApiOperation("WebSocket推送统计")
+    public Result<WebSocketStatsVO> stats() {
+        return Result.success(webSocketDispatcher.stats());
+    }
+}
@@ -3,6 +3,7 @@ package com.sky.controller.user;
 import com.sky.dto.OrderPaymentDTO;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.dto.OrdersSubmitDTO;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
@@ -74,6 +75,19 @@ public class OrderController {
         return Result.success(pageResult);
     }
 
+    /**
+     * 游标分页查询历史订单
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    @GetMapping("/historyOrders/cursor")
+    @ApiOperation("游标分页查询历史订单")
+    public Result<CursorPageResult> historyOrdersByCursor(OrdersPageQueryDTO ordersPageQueryDTO) {
+        log.info("游标分页查询历史订单：{}", ordersPageQueryDTO);
+        CursorPageResult cursorPageResult = orderService.pageQueryByCursor(ordersPageQueryDTO);
+        return Result.success(cursorPageResult);
+    }
+
     /**
      * 查询订单详情
      * @param id
@@ -100,6 +114,19 @@ public class OrderController {
         return Result.success("取消成功");
     }
 
+    /**
+     * 再来一单
+     * @param id
+     * @return
+     */
+    @PostMapping("/repetition/{id}")
+    @ApiOperation("再来一单")
+    public Result<String> repetition(@PathVariable Long id) {
+        log.info("再来一单：{}", id);
+        orderService.repetition(id);
+        return Result.success();
+    }
+
     /**
      * 客户催单
      * @param id
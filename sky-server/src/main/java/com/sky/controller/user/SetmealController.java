@@ -1,5 +1,6 @@
 package com.sky.controller.user;
 
+import com.sky.cache.SetmealCache;
 import com.sky.constant.StatusConstant;
 import com.sky.entity.Setmeal;
 import com.sky.result.Result;
@@ -36,7 +37,7 @@ public class SetmealController {
      */
     @GetMapping("/list")
     @ApiOperation("根据分类ID查询套餐")
-    @Cacheable(cacheNames = "setmealCache", key = "#categoryId")
+    @Cacheable(cacheNames = SetmealCache.CACHE_NAME, key = "#categoryId")
     public Result<List<Setmeal>> list(Long categoryId){
         log.info("查询数据库获取套餐数据，分类ID: {}", categoryId);
         Setmeal setmeal = new Setmeal();
@@ -34,6 +34,19 @@ public class ShoppingCartController {
         return Result.success();
     }
 
+    /**
+     * 批量添加购物车
+     * @param shoppingCartDTOList
+     * @return
+     */
+    @PostMapping("/addBatch")
+    @ApiOperation("批量添加购物车")
+    public Result<String> addBatch(@RequestBody List<ShoppingCartDTO> shoppingCartDTOList) {
+        log.info("批量添加购物车，商品信息为：{}", shoppingCartDTOList);
+        shoppingCartService.addShoppingCartBatch(shoppingCartDTOList);
+        return Result.success();
+    }
+
     /**
      * 查看购物车
      * @return
@@ -0,0 +1,99 @@
+package com.sky.mapper;
+
+import com.sky.entity.DailyBusinessStats;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@Mapper
+public interface DailyBusinessStatsMapper {
+
+    /**
+     * 查询日期范围内已封存的汇总数据
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select * from daily_business_stats where stat_date between #{begin} and #{end} and sealed = 1")
+    List<DailyBusinessStats> listSealed(LocalDate begin, LocalDate end);
+
+    /**
+     * 查询指定日期未封存的汇总数据（当天增量维护的行）
+     * @param date
+     * @return 还没有建立基线时返回null
+     */
+    @Select("select * from daily_business_stats where stat_date = #{date} and sealed = 0")
+    DailyBusinessStats getUnsealed(LocalDate date);
+
+    /**
+     * 查询最近一个已封存的日期
+     * @return
+     */
+    @Select("select max(stat_date) from daily_business_stats where sealed = 1")
+    LocalDate getLastSealedDate();
+
+    /**
+     * 删除日期范围内的汇总数据
+     * @param begin
+     * @param end
+     */
+    @Delete("delete from daily_business_stats where stat_date between #{begin} and #{end}")
+    void deleteByDateRange(LocalDate begin, LocalDate end);
+
+    /**
+     * 批量插入汇总数据（用于为没有订单的日期补零行）
+     * @param statsList
+     */
+    void insertBatch(List<DailyBusinessStats> statsList);
+
+    /**
+     * 从orders表按日期汇总订单数据并写入汇总表
+     * @param map 查询条件：begin、end、status（有效订单状态）、sealed
+     */
+    void upsertOrderStats(Map<String, Object> map);
+
+    /**
+     * 从user表按日期汇总新增用户数并写入汇总表
+     * @param map 查询条件：begin、end、sealed
+     */
+    void upsertUserStats(Map<String, Object> map);
+
+    /**
+     * 写入未封存的零值行，已存在时不修改
+     * @param date
+     */
+    @Insert("insert ignore into daily_business_stats (stat_date, sealed, update_time) values (#{date}, 0, now())")
+    void insertUnsealedIfAbsent(LocalDate date);
+
+    /**
+     * 未封存日期的订单总数加1，还没有建立基线时不修改
+     * @param date 下单日期
+     * @return 更新的行数
+     */
+    @Update("update daily_business_stats set order_count = order_count + 1, update_time = now() " +
+            "where stat_date = #{date} and sealed = 0")
+    int incrementOrderCount(LocalDate date);
+
+    /**
+     * 未封存日期的新增用户数加1，还没有建立基线时不修改
+     * @param date 注册日期
+     * @return 更新的行数
+     */
+    @Update("update daily_business_stats set new_users = new_users + 1, update_time = now() " +
+            "where stat_date = #{date} and sealed = 0")
+    int incrementNewUsers(LocalDate date);
+
+    /**
+     * 订单完成后累加对应下单日期未封存行的营业额和有效订单数
+     * @param ids 完成的订单ID
+     * @param status 有效订单状态
+     * @return 更新的行数
+     */
+    int addCompletedOrders(List<Long> ids, Integer status);
+}
@@ -0,0 +1,51 @@
+package com.sky.mapper;
+
+import com.sky.dto.GoodsSalesDTO;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@Mapper
+public interface DailyDishSalesMapper {
+
+    /**
+     * 删除日期范围内的商品销量汇总
+     * @param begin
+     * @param end
+     */
+    @Delete("delete from daily_dish_sales where stat_date between #{begin} and #{end}")
+    void deleteByDateRange(LocalDate begin, LocalDate end);
+
+    /**
+     * 从订单明细按日期、商品名称汇总已完成订单的销量并写入汇总表，已存在的行直接覆盖
+     * @param map 查询条件：begin、end、status（有效订单状态）
+     */
+    void insertFromOrders(Map<String, Object> map);
+
+    /**
+     * 订单完成后累加对应下单日期的商品销量，只累加已建立基线的未封存日期
+     * @param ids 完成的订单ID
+     * @param status 有效订单状态
+     */
+    void addCompletedOrders(List<Long> ids, Integer status);
+
+    /**
+     * 查询指定日期的商品销量
+     * @param date
+     * @return
+     */
+    @Select("select name, number from daily_dish_sales where stat_date = #{date}")
+    List<GoodsSalesDTO> listByDate(LocalDate date);
+
+    /**
+     * 按商品名称汇总日期范围内已封存日期的销量
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<GoodsSalesDTO> sumSealedByName(LocalDate begin, LocalDate end);
+}
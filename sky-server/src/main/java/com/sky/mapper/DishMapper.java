@@ -84,4 +84,18 @@ public interface DishMapper {
      * @return
      */
     Integer countByMap(Map<String, Object> map);
+
+    /**
+     * 根据菜品ID集合批量查询菜品
+     * @param ids
+     * @return
+     */
+    List<Dish> getByIds(List<Long> ids);
+
+    /**
+     * 根据菜品ID集合查询涉及的分类ID
+     * @param ids
+     * @return
+     */
+    List<Long> getCategoryIdsByIds(List<Long> ids);
 }
\ No newline at end of file
@@ -1,8 +1,12 @@
 package com.sky.mapper;
 
+import com.sky.dto.DailyOrderStatisticsDTO;
+import com.sky.dto.OrderStatusCountDTO;
 import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.entity.DailyDishSales;
 import com.sky.entity.Orders;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -31,12 +35,37 @@ public interface OrderMapper {
      */
     Orders getById(Long id);
 
+    /**
+     * 锁定订单并查询当前状态，只返回订单ID、下单用户ID和状态，必须在事务中调用
+     * @param id
+     * @return
+     */
+    @Select("select id, user_id, status from orders where id = #{id} for update")
+    Orders getStatusForUpdate(Long id);
+
+    /**
+     * 根据id查询下单用户ID
+     * @param id
+     * @return
+     */
+    @Select("select user_id from orders where id = #{id}")
+    Long getUserIdById(Long id);
+
     /**
      * 更新订单信息
      * @param orders
      */
     void update(Orders orders);
 
+    /**
+     * 订单状态流转：只有当前状态在fromStatuses中时才更新，一条语句完成校验和修改
+     * @param orders 订单ID、目标状态及需要同时写入的字段，userId不为空时同时校验订单归属
+     * @param fromStatuses 允许流转的当前状态
+     * @param refundIfPaid 为true时已支付的订单支付状态同时改为退款
+     * @return 更新的行数，0表示订单不存在或状态不允许
+     */
+    int updateStatus(Orders orders, List<Integer> fromStatuses, boolean refundIfPaid);
+
     /**
      * 分页查询订单
      * @param ordersPageQueryDTO
@@ -44,6 +73,16 @@ public interface OrderMapper {
      */
     List<Orders> pageQuery(OrdersPageQueryDTO ordersPageQueryDTO);
 
+    /**
+     * 游标分页查询订单，按下单时间、ID倒序，从(lastOrderTime, lastId)之后开始读取
+     * @param ordersPageQueryDTO 查询条件
+     * @param lastOrderTime 上一页最后一条订单的下单时间，第一页传null
+     * @param lastId 上一页最后一条订单的ID，第一页传null
+     * @param limit 读取条数
+     * @return
+     */
+    List<Orders> cursorQuery(OrdersPageQueryDTO ordersPageQueryDTO, LocalDateTime lastOrderTime, Long lastId, Integer limit);
+
     /**
      * 根据用户ID和状态查询订单数量
      * @param userId
@@ -59,6 +98,13 @@ public interface OrderMapper {
      */
     Integer countByStatus(Integer status);
 
+    /**
+     * 按状态分组统计订单数量
+     * @return
+     */
+    @Select("select status, count(id) count from orders group by status")
+    List<OrderStatusCountDTO> countGroupByStatus();
+
     /**
      * 根据状态和下单时间查询订单
      * @param status 订单状态
@@ -67,6 +113,33 @@ public interface OrderMapper {
      */
     List<Orders> getByStatusAndOrderTimeLT(Integer status, LocalDateTime time);
 
+    /**
+     * 按订单ID分页查询指定状态、下单时间早于time的订单，只查询id和下单时间
+     * @param status 订单状态
+     * @param time 下单时间
+     * @param lastId 上一页最后一个订单ID，第一页传0
+     * @param limit 每页条数
+     * @return
+     */
+    List<Orders> listIdByStatusAndOrderTimeLT(Integer status, LocalDateTime time, Long lastId, Integer limit);
+
+    /**
+     * 批量修改订单状态，只修改当前状态为fromStatus的订单
+     * @param orders 目标状态及需要同时写入的字段
+     * @param ids 订单ID
+     * @param fromStatus 当前状态
+     * @return 更新的行数
+     */
+    int updateStatusByIds(Orders orders, List<Long> ids, Integer fromStatus);
+
+    /**
+     * 查询指定订单中处于某个状态的订单，只返回订单ID和下单用户ID
+     * @param ids 订单ID
+     * @param status 订单状态
+     * @return
+     */
+    List<Orders> listIdByIdsAndStatus(List<Long> ids, Integer status);
+
     /**
      * 根据状态查询订单
      * @param status 订单状态
@@ -94,4 +167,25 @@ public interface OrderMapper {
      * @return
      */
     List<Map<String, Object>> getSalesTop10(Map<String, Object> map);
+
+    /**
+     * 按下单日期分组统计营业额、订单总数和有效订单数
+     * @param map 查询条件：begin、end、status（有效订单状态）
+     * @return
+     */
+    List<DailyOrderStatisticsDTO> statisticsGroupByDate(Map<String, Object> map);
+
+    /**
+     * 按下单日期和商品名称统计已完成订单的销量
+     * @param map 查询条件：begin、end、status（有效订单状态）
+     * @return
+     */
+    List<DailyDishSales> getSalesGroupByDate(Map<String, Object> map);
+
+    /**
+     * 按下单时间流式读取订单，逐行回调，不会把整个结果集加载到内存
+     * @param map 查询条件：begin、end
+     * @param resultHandler 逐行处理
+     */
+    void streamByOrderTime(Map<String, Object> map, ResultHandler<Orders> resultHandler);
 }
\ No newline at end of file
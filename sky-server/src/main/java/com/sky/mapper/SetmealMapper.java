@@ -82,4 +82,25 @@ public interface SetmealMapper {
      * @return
      */
     Integer countByMap(Map<String, Object> map);
+
+    /**
+     * 根据套餐ID集合批量查询套餐
+     * @param ids
+     * @return
+     */
+    List<Setmeal> getByIds(List<Long> ids);
+
+    /**
+     * 根据套餐ID集合查询涉及的分类ID
+     * @param ids
+     * @return
+     */
+    List<Long> getCategoryIdsByIds(List<Long> ids);
+
+    /**
+     * 根据菜品ID集合查询包含这些菜品的套餐所属的分类ID
+     * @param dishIds
+     * @return
+     */
+    List<Long> getCategoryIdsByDishIds(List<Long> dishIds);
 }
\ No newline at end of file
@@ -34,6 +34,38 @@ public interface ShoppingCartMapper {
             " values (#{name}, #{userId}, #{dishId}, #{setmealId}, #{dishFlavor}, #{number}, #{amount}, #{image}, #{createTime})")
     void insert(ShoppingCart shoppingCart);
 
+    /**
+     * 商品数量加一，返回修改的行数，为0时说明购物车中还没有该商品
+     * @param shoppingCart 用户ID、菜品ID或套餐ID、口味
+     * @return
+     */
+    int incrementNumber(ShoppingCart shoppingCart);
+
+    /**
+     * 插入购物车数据，同一商品已存在时（并发加购）数量加一
+     * 依赖 (user_id, item_key) 唯一索引
+     * @param shoppingCart
+     */
+    @AutoFill(OperationType.INSERT)
+    @Insert("insert into shopping_cart (name, user_id, dish_id, setmeal_id, dish_flavor, number, amount, image, create_time) " +
+            " values (#{name}, #{userId}, #{dishId}, #{setmealId}, #{dishFlavor}, #{number}, #{amount}, #{image}, #{createTime})" +
+            " on duplicate key update number = number + values(number)")
+    void upsert(ShoppingCart shoppingCart);
+
+    /**
+     * 数量大于1的商品数量减一，返回修改的行数
+     * @param shoppingCart 用户ID、菜品ID或套餐ID、口味
+     * @return
+     */
+    int decrementNumber(ShoppingCart shoppingCart);
+
+    /**
+     * 删除数量不大于1的商品
+     * @param shoppingCart 用户ID、菜品ID或套餐ID、口味
+     * @return
+     */
+    int deleteLastOne(ShoppingCart shoppingCart);
+
     /**
      * 根据用户id删除购物车数据
      * @param userId
@@ -49,7 +81,7 @@ public interface ShoppingCartMapper {
     void deleteById(Long id);
 
     /**
-     * 批量插入购物车数据
+     * 批量插入购物车数据，已存在的商品数量累加
      * @param shoppingCartList
      */
     void insertBatch(List<ShoppingCart> shoppingCartList);
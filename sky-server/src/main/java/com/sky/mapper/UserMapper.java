@@ -1,8 +1,10 @@
 package com.sky.mapper;
 
+import com.sky.dto.DailyUserStatisticsDTO;
 import com.sky.entity.User;
 import org.apache.ibatis.annotations.Mapper;
 
+import java.util.List;
 import java.util.Map;
 
 @Mapper
@@ -27,4 +29,11 @@ public interface UserMapper {
      * @return
      */
     Integer countByMap(Map<String, Object> map);
+
+    /**
+     * 按注册日期分组统计新增用户数
+     * @param map 查询条件：begin、end
+     * @return
+     */
+    List<DailyUserStatisticsDTO> countGroupByDate(Map<String, Object> map);
 }
\ No newline at end of file
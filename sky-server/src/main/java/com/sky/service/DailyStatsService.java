@@ -0,0 +1,65 @@
+package com.sky.service;
+
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.entity.DailyBusinessStats;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+public interface DailyStatsService {
+
+    /**
+     * 查询日期范围内每天的运营数据：已封存的日期和今天读汇总表，其余日期从原始订单表统计
+     * @param begin 开始日期
+     * @param end 结束日期
+     * @return key为日期，没有任何数据的日期不在结果中
+     */
+    Map<LocalDate, DailyBusinessStats> getDailyStats(LocalDate begin, LocalDate end);
+
+    /**
+     * 查询日期范围内的销量排名Top10
+     * @param begin 开始日期
+     * @param end 结束日期
+     * @return
+     */
+    List<GoodsSalesDTO> getSalesTop10(LocalDate begin, LocalDate end);
+
+    /**
+     * 用原始表重新统计当天的汇总数据（未封存），建立增量更新的基线并纠正增量更新的偏差
+     */
+    void refreshToday();
+
+    /**
+     * 新订单，累加下单日期的订单总数
+     * @param orderTime 下单时间
+     */
+    void orderCreated(LocalDateTime orderTime);
+
+    /**
+     * 订单完成，累加下单日期的营业额、有效订单数和商品销量
+     * @param orderIds 完成的订单ID
+     */
+    void ordersCompleted(List<Long> orderIds);
+
+    /**
+     * 新用户注册，累加注册日期的新增用户数
+     * @param createTime 注册时间
+     */
+    void userCreated(LocalDateTime createTime);
+
+    /**
+     * 封存最近一个已封存日期之后到昨天为止的所有日期
+     * @return 封存的天数
+     */
+    int sealPastDays();
+
+    /**
+     * 重建指定日期范围内的历史汇总数据并封存，结束日期最晚到昨天，单次最多回填一年
+     * @param begin 开始日期
+     * @param end 结束日期
+     * @return 重建的天数
+     */
+    int backfill(LocalDate begin, LocalDate end);
+}
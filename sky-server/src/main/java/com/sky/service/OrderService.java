@@ -1,6 +1,7 @@
 package com.sky.service;
 
 import com.sky.dto.*;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
@@ -47,6 +48,20 @@ public interface OrderService {
      */
     PageResult conditionSearch(OrdersPageQueryDTO ordersPageQueryDTO);
 
+    /**
+     * 游标分页查询历史订单（用户端）
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    CursorPageResult pageQueryByCursor(OrdersPageQueryDTO ordersPageQueryDTO);
+
+    /**
+     * 游标分页条件搜索订单（管理端）
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    CursorPageResult conditionSearchByCursor(OrdersPageQueryDTO ordersPageQueryDTO);
+
     /**
      * 各个状态订单数量统计
      * @return
@@ -88,4 +103,10 @@ public interface OrderService {
      * @param id 订单ID
      */
     void reminder(Long id);
+
+    /**
+     * 再来一单，将订单中的商品加入购物车
+     * @param id 订单ID
+     */
+    void repetition(Long id);
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.sky.service;
+
+import com.sky.vo.ReportExportJobVO;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.time.LocalDate;
+
+public interface ReportExportService {
+
+    /**
+     * 同步导出运营数据报表
+     * @param begin 开始日期
+     * @param end 结束日期
+     * @param out 输出流
+     */
+    void export(LocalDate begin, LocalDate end, OutputStream out);
+
+    /**
+     * 提交异步导出任务
+     * @param begin 开始日期
+     * @param end 结束日期
+     * @return
+     */
+    ReportExportJobVO submit(LocalDate begin, LocalDate end);
+
+    /**
+     * 查询异步导出任务状态
+     * @param jobId
+     * @return
+     */
+    ReportExportJobVO getJob(String jobId);
+
+    /**
+     * 获取已完成的异步导出任务生成的文件
+     * @param jobId
+     * @return
+     */
+    File getJobFile(String jobId);
+
+    /**
+     * 清理过期的异步导出任务及文件
+     */
+    void cleanExpiredJobs();
+}
@@ -63,4 +63,18 @@ public interface SetmealService {
      * @return
      */
     List<DishItemVO> getDishItemById(Long id);
+
+    /**
+     * 根据套餐ID集合查询涉及的分类ID
+     * @param ids
+     * @return
+     */
+    List<Long> getCategoryIdsByIds(List<Long> ids);
+
+    /**
+     * 根据菜品ID集合查询包含这些菜品的套餐所属的分类ID
+     * @param dishIds
+     * @return
+     */
+    List<Long> getCategoryIdsByDishIds(List<Long> dishIds);
 }
@@ -13,6 +13,12 @@ public interface ShoppingCartService {
      */
     void addShoppingCart(ShoppingCartDTO shoppingCartDTO);
 
+    /**
+     * 批量添加购物车
+     * @param shoppingCartDTOList
+     */
+    void addShoppingCartBatch(List<ShoppingCartDTO> shoppingCartDTOList);
+
     /**
      * 查看购物车
      * @return
@@ -29,4 +35,11 @@ public interface ShoppingCartService {
      * @param shoppingCartDTO
      */
     void subShoppingCart(ShoppingCartDTO shoppingCartDTO);
+
+    /**
+     * 用Redis中的购物车覆盖数据库中的购物车数据
+     * @param userId 用户ID
+     * @param shoppingCartList 购物车商品
+     */
+    void saveSnapshot(Long userId, List<ShoppingCart> shoppingCartList);
 }
\ No newline at end of file
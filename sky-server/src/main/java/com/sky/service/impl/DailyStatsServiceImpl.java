@@ -0,0 +1,355 @@
+package com.sky.service.impl;
+
+import com.sky.dto.DailyOrderStatisticsDTO;
+import com.sky.dto.DailyUserStatisticsDTO;
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.entity.DailyBusinessStats;
+import com.sky.entity.DailyDishSales;
+import com.sky.entity.Orders;
+import com.sky.exception.ReportBusinessException;
+import com.sky.mapper.DailyBusinessStatsMapper;
+import com.sky.mapper.DailyDishSalesMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.UserMapper;
+import com.sky.service.DailyStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class DailyStatsServiceImpl implements DailyStatsService {
+
+    /**
+     * 单次回填的最大天数，回填在一个事务中删除并重建整个范围，范围过大会长时间锁表
+     */
+    private static final int MAX_BACKFILL_DAYS = 366;
+
+    @Autowired
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
+    @Autowired
+    private DailyDishSalesMapper dailyDishSalesMapper;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private UserMapper userMapper;
+
+    /**
+     * 查询日期范围内每天的运营数据
+     * @param begin 开始日期
+     * @param end 结束日期
+     * @return
+     */
+    @Override
+    public Map<LocalDate, DailyBusinessStats> getDailyStats(LocalDate begin, LocalDate end) {
+        Map<LocalDate, DailyBusinessStats> statsMap = new HashMap<>();
+
+        // 1. 已封存的日期直接读汇总表（今天永远不会被封存，只查今天时跳过）
+        if (begin.isBefore(LocalDate.now())) {
+            for (DailyBusinessStats stats : dailyBusinessStatsMapper.listSealed(begin, end)) {
+                statsMap.put(stats.getStatDate(), stats);
+            }
+        }
+
+        // 2. 今天读增量维护的未封存行
+        DailyBusinessStats todayStats = getTodayStats(begin, end);
+        if (todayStats != null) {
+            statsMap.put(todayStats.getStatDate(), todayStats);
+        }
+
+        // 3. 其余日期（今天的行还没有建立基线、尚未封存或尚未回填的日期）从原始表统计
+        TreeSet<LocalDate> rawDates = getUnsealedDates(begin, end, statsMap);
+        if (rawDates.isEmpty()) {
+            return statsMap;
+        }
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("begin", LocalDateTime.of(rawDates.first(), LocalTime.MIN));
+        map.put("end", LocalDateTime.of(rawDates.last(), LocalTime.MAX));
+        map.put("status", Orders.COMPLETED);
+
+        for (DailyOrderStatisticsDTO statistics : orderMapper.statisticsGroupByDate(map)) {
+            if (!rawDates.contains(statistics.getDate())) {
+                continue;
+            }
+            DailyBusinessStats stats = statsMap.computeIfAbsent(statistics.getDate(), this::emptyStats);
+            stats.setTurnover(statistics.getTurnover() == null
+                    ? BigDecimal.ZERO : BigDecimal.valueOf(statistics.getTurnover()));
+            stats.setOrderCount(statistics.getOrderCount() == null ? 0 : statistics.getOrderCount());
+            stats.setValidOrderCount(statistics.getValidOrderCount() == null ? 0 : statistics.getValidOrderCount());
+        }
+
+        for (DailyUserStatisticsDTO statistics : userMapper.countGroupByDate(map)) {
+            if (!rawDates.contains(statistics.getDate())) {
+                continue;
+            }
+            DailyBusinessStats stats = statsMap.computeIfAbsent(statistics.getDate(), this::emptyStats);
+            stats.setNewUsers(statistics.getNewUsers() == null ? 0 : statistics.getNewUsers());
+        }
+
+        return statsMap;
+    }
+
+    /**
+     * 查询日期范围内的销量排名Top10
+     * @param begin 开始日期
+     * @param end 结束日期
+     * @return
+     */
+    @Override
+    public List<GoodsSalesDTO> getSalesTop10(LocalDate begin, LocalDate end) {
+        Map<String, Integer> salesMap = new HashMap<>();
+
+        // 1. 已封存日期的销量从汇总表读取
+        Map<LocalDate, DailyBusinessStats> sealedMap = new HashMap<>();
+        if (begin.isBefore(LocalDate.now())) {
+            for (DailyBusinessStats stats : dailyBusinessStatsMapper.listSealed(begin, end)) {
+                sealedMap.put(stats.getStatDate(), stats);
+            }
+            for (GoodsSalesDTO goodsSales : dailyDishSalesMapper.sumSealedByName(begin, end)) {
+                salesMap.merge(goodsSales.getName(), goodsSales.getNumber(), Integer::sum);
+            }
+        }
+
+        // 2. 今天的销量读增量维护的汇总
+        DailyBusinessStats todayStats = getTodayStats(begin, end);
+        if (todayStats != null) {
+            sealedMap.put(todayStats.getStatDate(), todayStats);
+            for (GoodsSalesDTO goodsSales : dailyDishSalesMapper.listByDate(todayStats.getStatDate())) {
+                salesMap.merge(goodsSales.getName(), goodsSales.getNumber(), Integer::sum);
+            }
+        }
+
+        // 3. 其余日期的销量从原始订单表统计
+        TreeSet<LocalDate> rawDates = getUnsealedDates(begin, end, sealedMap);
+        if (!rawDates.isEmpty()) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("begin", LocalDateTime.of(rawDates.first(), LocalTime.MIN));
+            map.put("end", LocalDateTime.of(rawDates.last(), LocalTime.MAX));
+            map.put("status", Orders.COMPLETED);
+            for (DailyDishSales dishSales : orderMapper.getSalesGroupByDate(map)) {
+                if (rawDates.contains(dishSales.getStatDate())) {
+                    salesMap.merge(dishSales.getName(), dishSales.getNumber(), Integer::sum);
+                }
+            }
+        }
+
+        // 4. 合并后按销量倒序取前10
+        return salesMap.entrySet().stream()
+                .sorted(Collections.reverseOrder(Map.Entry.comparingByValue()))
+                .limit(10)
+                .map(entry -> new GoodsSalesDTO(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 用原始表重新统计当天的汇总数据
+     * 先读原始表再覆盖汇总行，和订单事务（先改订单再累加汇总行）的加锁顺序一致；
+     * 统计期间完成的订单要么被这次统计读到，要么在这次统计提交后才累加，不会重复也不会遗漏
+     */
+    @Override
+    @Transactional
+    public void refreshToday() {
+        long start = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("begin", LocalDateTime.of(today, LocalTime.MIN));
+        map.put("end", LocalDateTime.of(today, LocalTime.MAX));
+        map.put("status", Orders.COMPLETED);
+        map.put("sealed", DailyBusinessStats.UNSEALED);
+        dailyBusinessStatsMapper.upsertOrderStats(map);
+        dailyBusinessStatsMapper.upsertUserStats(map);
+        dailyDishSalesMapper.insertFromOrders(map);
+        // 还没有订单和新用户时写入零值行，之后的变化在这一行上累加
+        dailyBusinessStatsMapper.insertUnsealedIfAbsent(today);
+
+        log.info("当天运营数据汇总完成：{}，耗时{}ms", today, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 新订单，累加下单日期的订单总数
+     * 在下单事务中执行，累加失败只记录日志，偏差由下一次refreshToday纠正
+     * @param orderTime
+     */
+    @Override
+    public void orderCreated(LocalDateTime orderTime) {
+        try {
+            dailyBusinessStatsMapper.incrementOrderCount(orderTime.toLocalDate());
+        } catch (RuntimeException e) {
+            log.warn("累加当天订单数失败", e);
+        }
+    }
+
+    /**
+     * 订单完成，累加下单日期的营业额、有效订单数和商品销量
+     * 在修改订单状态的同一个事务中执行，累加失败只记录日志，偏差由下一次refreshToday纠正
+     * @param orderIds
+     */
+    @Override
+    public void ordersCompleted(List<Long> orderIds) {
+        if (orderIds == null || orderIds.isEmpty()) {
+            return;
+        }
+        try {
+            // 先改汇总行再改销量行，和refreshToday的加锁顺序一致
+            dailyBusinessStatsMapper.addCompletedOrders(orderIds, Orders.COMPLETED);
+            dailyDishSalesMapper.addCompletedOrders(orderIds, Orders.COMPLETED);
+        } catch (RuntimeException e) {
+            log.warn("累加当天营业额失败，订单ID：{}", orderIds, e);
+        }
+    }
+
+    /**
+     * 新用户注册，累加注册日期的新增用户数
+     * @param createTime
+     */
+    @Override
+    public void userCreated(LocalDateTime createTime) {
+        try {
+            dailyBusinessStatsMapper.incrementNewUsers(createTime.toLocalDate());
+        } catch (RuntimeException e) {
+            log.warn("累加当天新增用户数失败", e);
+        }
+    }
+
+    /**
+     * 封存最近一个已封存日期之后到昨天为止的所有日期
+     * @return
+     */
+    @Override
+    @Transactional
+    public int sealPastDays() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        LocalDate lastSealedDate = dailyBusinessStatsMapper.getLastSealedDate();
+
+        // 从未封存过（尚未回填历史），只封存昨天，更早的历史交给回填命令
+        LocalDate begin = lastSealedDate == null ? yesterday : lastSealedDate.plusDays(1);
+        if (begin.isAfter(yesterday)) {
+            return 0;
+        }
+        return rebuild(begin, yesterday);
+    }
+
+    /**
+     * 重建历史汇总数据
+     * @param begin 开始日期
+     * @param end 结束日期
+     * @return
+     */
+    @Override
+    @Transactional
+    public int backfill(LocalDate begin, LocalDate end) {
+        if (begin == null || end == null || begin.isAfter(end)) {
+            throw new ReportBusinessException("回填日期范围不正确");
+        }
+        if (ChronoUnit.DAYS.between(begin, end) + 1 > MAX_BACKFILL_DAYS) {
+            throw new ReportBusinessException("单次回填最多" + MAX_BACKFILL_DAYS + "天");
+        }
+
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        if (end.isAfter(yesterday)) {
+            end = yesterday;
+        }
+        if (begin.isAfter(end)) {
+            return 0;
+        }
+        return rebuild(begin, end);
+    }
+
+    /**
+     * 用原始表的数据整体重建日期范围内的汇总行并封存
+     * @param begin
+     * @param end
+     * @return 重建的天数
+     */
+    private int rebuild(LocalDate begin, LocalDate end) {
+        long start = System.currentTimeMillis();
+
+        dailyBusinessStatsMapper.deleteByDateRange(begin, end);
+        dailyDishSalesMapper.deleteByDateRange(begin, end);
+
+        // 先为每一天写入零值行，保证没有订单的日期也能被标记为已封存
+        List<DailyBusinessStats> statsList = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            DailyBusinessStats stats = emptyStats(date);
+            stats.setSealed(DailyBusinessStats.SEALED);
+            stats.setUpdateTime(LocalDateTime.now());
+            statsList.add(stats);
+        }
+        dailyBusinessStatsMapper.insertBatch(statsList);
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("begin", LocalDateTime.of(begin, LocalTime.MIN));
+        map.put("end", LocalDateTime.of(end, LocalTime.MAX));
+        map.put("status", Orders.COMPLETED);
+        map.put("sealed", DailyBusinessStats.SEALED);
+        dailyBusinessStatsMapper.upsertOrderStats(map);
+        dailyBusinessStatsMapper.upsertUserStats(map);
+        dailyDishSalesMapper.insertFromOrders(map);
+
+        log.info("运营数据汇总完成：{} ~ {}，共{}天，耗时{}ms",
+                begin, end, statsList.size(), System.currentTimeMillis() - start);
+        return statsList.size();
+    }
+
+    /**
+     * 查询范围包含今天时读取今天增量维护的汇总行
+     * @param begin
+     * @param end
+     * @return 不包含今天或还没有建立基线时返回null
+     */
+    private DailyBusinessStats getTodayStats(LocalDate begin, LocalDate end) {
+        LocalDate today = LocalDate.now();
+        if (today.isBefore(begin) || today.isAfter(end)) {
+            return null;
+        }
+        return dailyBusinessStatsMapper.getUnsealed(today);
+    }
+
+    /**
+     * 获取日期范围内不在已读取的汇总数据中的日期
+     * @param begin
+     * @param end
+     * @param sealedMap
+     * @return
+     */
+    private TreeSet<LocalDate> getUnsealedDates(LocalDate begin, LocalDate end, Map<LocalDate, DailyBusinessStats> sealedMap) {
+        TreeSet<LocalDate> dates = new TreeSet<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            if (!sealedMap.containsKey(date)) {
+                dates.add(date);
+            }
+        }
+        return dates;
+    }
+
+    /**
+     * 构造指定日期的零值汇总行
+     * @param date
+     * @return
+     */
+    private DailyBusinessStats emptyStats(LocalDate date) {
+        return DailyBusinessStats.builder()
+                .statDate(date)
+                .turnover(BigDecimal.ZERO)
+                .orderCount(0)
+                .validOrderCount(0)
+                .newUsers(0)
+                .build();
+    }
+}
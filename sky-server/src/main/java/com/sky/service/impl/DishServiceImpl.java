@@ -20,7 +20,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Slf4j
@@ -106,16 +108,27 @@ public class DishServiceImpl implements DishService {
     public List<DishVO> listWithFlavor(Dish dish) {
         List<Dish> dishList = dishMapper.list(dish);
         List<DishVO> dishVOList = new ArrayList<>();
+        if (dishList.isEmpty()) {
+            return dishVOList;
+        }
+
+        // 1. 一次查询出所有菜品的口味，按菜品id分组
+        List<Long> dishIds = new ArrayList<>();
+        for (Dish d : dishList) {
+            dishIds.add(d.getId());
+        }
+        Map<Long, List<DishFlavor>> flavorMap = new HashMap<>();
+        for (DishFlavor flavor : dishFlavorMapper.getByDishIds(dishIds)) {
+            flavorMap.computeIfAbsent(flavor.getDishId(), k -> new ArrayList<>()).add(flavor);
+        }
+
         for (Dish d : dishList) {
             DishVO dishVO = new DishVO();
             // 2. 将 Dish 的基本属性拷贝到 DishVO 对象中
             BeanUtils.copyProperties(d, dishVO);
 
-            // 3. 根据菜品id查询对应的口味列表
-            List<DishFlavor> flavors = dishFlavorMapper.getByDishId(d.getId());
-
-            // 4. 将口味列表塞进 VO
-            dishVO.setFlavors(flavors);
+            // 3. 将口味列表塞进 VO
+            dishVO.setFlavors(flavorMap.getOrDefault(d.getId(), new ArrayList<>()));
             dishVOList.add(dishVO);
         }
         return dishVOList;
@@ -182,4 +195,17 @@ public class DishServiceImpl implements DishService {
         List<Dish> list = dishMapper.getDishesByCategoryId(categoryId);
         return list;
     }
+
+    /**
+     * 根据菜品ID集合查询涉及的分类ID
+     * @param ids
+     * @return
+     */
+    @Override
+    public List<Long> getCategoryIdsByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return dishMapper.getCategoryIdsByIds(ids);
+    }
 }
\ No newline at end of file
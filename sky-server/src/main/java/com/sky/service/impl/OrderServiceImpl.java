@@ -1,24 +1,32 @@
 package com.sky.service.impl;
 
-import com.alibaba.fastjson.JSON;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
+import com.sky.cache.CatalogSnapshot;
+import com.sky.cache.OrderStatusCounter;
+import com.sky.cache.ShoppingCartStore;
+import com.sky.constant.MessageConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.dto.OrdersSubmitDTO;
+import com.sky.dto.ShoppingCartDTO;
 import com.sky.entity.*;
 import com.sky.exception.AddressBookBusinessException;
 import com.sky.exception.OrderBusinessException;
 import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.*;
+import com.sky.properties.OrderFeeProperties;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
+import com.sky.service.DailyStatsService;
 import com.sky.service.OrderService;
+import com.sky.service.ShoppingCartService;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
-import com.sky.websocket.WebSocketServer;
+import com.sky.websocket.OrderNotifier;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,8 +34,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +47,8 @@ import java.util.Map;
 import com.sky.dto.OrdersConfirmDTO;
 import com.sky.dto.OrdersRejectionDTO;
 import com.sky.dto.OrdersCancelDTO;
+import com.sky.task.OrderTimeoutTask;
+import com.sky.utils.SnowflakeIdGenerator;
 
 @Service
 @Slf4j
@@ -56,7 +70,31 @@ public class OrderServiceImpl implements OrderService {
     private UserMapper userMapper;
     
     @Autowired
-    private WebSocketServer webSocketServer;
+    private OrderNotifier orderNotifier;
+
+    @Autowired
+    private SnowflakeIdGenerator snowflakeIdGenerator;
+
+    @Autowired
+    private OrderTimeoutTask orderTimeoutTask;
+
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+
+    @Autowired
+    private ShoppingCartStore shoppingCartStore;
+
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
+
+    @Autowired
+    private OrderFeeProperties orderFeeProperties;
+
+    @Autowired
+    private DailyStatsService dailyStatsService;
 
     /**
      * 用户下单
@@ -74,20 +112,59 @@ public class OrderServiceImpl implements OrderService {
 
         // 2. 校验当前用户购物车是否为空
         Long userId = getCurrentUserId();
-        ShoppingCart shoppingCart = new ShoppingCart();
-        shoppingCart.setUserId(userId);
-        List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(shoppingCart);
+        List<ShoppingCart> shoppingCartList = listShoppingCart(userId);
         if (shoppingCartList == null || shoppingCartList.isEmpty()) {
             throw new ShoppingCartBusinessException("购物车为空");
         }
 
-        // 3. 向orders表插入1条记录
+        // 3. 按商品快照中的最新信息生成订单明细，并在服务端计算订单金额
+        CatalogSnapshot.Catalog catalog = catalogSnapshot.get();
+        List<OrderDetail> orderDetailList = new ArrayList<>();
+        BigDecimal itemAmount = BigDecimal.ZERO;
+        int itemCount = 0;
+        for (ShoppingCart cart : shoppingCartList) {
+            OrderDetail orderDetail = new OrderDetail();
+            if (cart.getDishId() != null) {
+                if (!catalog.isDishOnSale(cart.getDishId())) {
+                    throw new ShoppingCartBusinessException(MessageConstant.DISH_NOT_ON_SALE + "：" + cart.getName());
+                }
+                Dish dish = catalog.getDish(cart.getDishId());
+                orderDetail.setName(dish.getName());
+                orderDetail.setImage(dish.getImage());
+                orderDetail.setAmount(dish.getPrice());
+            } else {
+                if (!catalog.isSetmealOnSale(cart.getSetmealId())) {
+                    throw new ShoppingCartBusinessException(MessageConstant.SETMEAL_NOT_ON_SALE + "：" + cart.getName());
+                }
+                Setmeal setmeal = catalog.getSetmeal(cart.getSetmealId());
+                orderDetail.setName(setmeal.getName());
+                orderDetail.setImage(setmeal.getImage());
+                orderDetail.setAmount(setmeal.getPrice());
+            }
+            orderDetail.setDishId(cart.getDishId());
+            orderDetail.setSetmealId(cart.getSetmealId());
+            orderDetail.setDishFlavor(cart.getDishFlavor());
+            orderDetail.setNumber(cart.getNumber());
+            orderDetailList.add(orderDetail);
+
+            itemAmount = itemAmount.add(orderDetail.getAmount().multiply(BigDecimal.valueOf(cart.getNumber())));
+            itemCount += cart.getNumber();
+        }
+        // 订单金额 = 商品金额 + 打包费 + 配送费
+        int packAmount = itemCount * orderFeeProperties.getPackFeePerItem();
+        BigDecimal amount = itemAmount.add(BigDecimal.valueOf(packAmount)).add(orderFeeProperties.getDeliveryFee());
+        if (ordersSubmitDTO.getAmount() != null && ordersSubmitDTO.getAmount().compareTo(amount) != 0) {
+            log.warn("客户端提交的订单金额与服务端计算结果不一致，以服务端为准，提交：{}，计算：{}，商品快照版本：{}",
+                    ordersSubmitDTO.getAmount(), amount, catalog.getVersion());
+        }
+
+        // 4. 向orders表插入1条记录
         Orders order = new Orders();
         BeanUtils.copyProperties(ordersSubmitDTO, order);
         order.setOrderTime(LocalDateTime.now());
         order.setPayStatus(Orders.UN_PAID);
         order.setStatus(Orders.PENDING_PAYMENT);
-        order.setNumber(String.valueOf(System.currentTimeMillis()));
+        order.setNumber(snowflakeIdGenerator.nextIdStr());
         order.setPhone(addressBook.getPhone());
         // 完善地址拼接：省+市+区+详细地址
         String fullAddress = addressBook.getProvinceName() + addressBook.getCityName() + 
@@ -95,29 +172,28 @@ public class OrderServiceImpl implements OrderService {
         order.setAddress(fullAddress);
         order.setConsignee(addressBook.getConsignee());
         order.setUserId(userId);
+        order.setPackAmount(packAmount);
+        order.setAmount(amount);
 
         orderMapper.insert(order);
+        orderStatusCounter.created(Orders.PENDING_PAYMENT);
+        dailyStatsService.orderCreated(order.getOrderTime());
+        // 登记支付超时时间，到期仍未付款的订单会被自动取消
+        orderTimeoutTask.register(order.getId(), order.getOrderTime());
 
-        // 4. 向order_detail表批量插入购物车中的商品明细
-        List<OrderDetail> orderDetailList = new ArrayList<>();
-        for (ShoppingCart cart : shoppingCartList) {
-            OrderDetail orderDetail = new OrderDetail();
+        // 5. 向order_detail表批量插入订单明细
+        for (OrderDetail orderDetail : orderDetailList) {
             orderDetail.setOrderId(order.getId());
-            orderDetail.setName(cart.getName());
-            orderDetail.setImage(cart.getImage());
-            orderDetail.setDishId(cart.getDishId());
-            orderDetail.setSetmealId(cart.getSetmealId());
-            orderDetail.setDishFlavor(cart.getDishFlavor());
-            orderDetail.setNumber(cart.getNumber());
-            orderDetail.setAmount(cart.getAmount());
-            orderDetailList.add(orderDetail);
         }
         orderDetailMapper.insertBatch(orderDetailList);
 
-        // 5. 下单成功后，清空当前用户的购物车数据
+        // 6. 下单成功后，清空当前用户的购物车数据，Redis购物车在事务提交后清空
         shoppingCartMapper.deleteByUserId(userId);
+        if (shoppingCartStore.isEnabled()) {
+            shoppingCartStore.clear(userId);
+        }
 
-        // 6. 封装VO返回结果
+        // 7. 封装VO返回结果
         OrderSubmitVO orderSubmitVO = OrderSubmitVO.builder()
                 .id(order.getId())
                 .orderNumber(order.getNumber())
@@ -169,25 +245,8 @@ public class OrderServiceImpl implements OrderService {
         List<Orders> ordersList = orderMapper.pageQuery(ordersPageQueryDTO);
         PageInfo<Orders> pageInfo = new PageInfo<>(ordersList);
         
-        // 遍历订单列表，为每个订单查询订单明细
-        List<OrderVO> orderVOList = new ArrayList<>();
-        for (Orders order : ordersList) {
-            OrderVO orderVO = new OrderVO();
-            BeanUtils.copyProperties(order, orderVO);
-            
-            // 查询订单明细
-            List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(order.getId());
-            orderVO.setOrderDetailList(orderDetailList);
-            
-            // 构建订单菜品信息字符串
-            StringBuilder orderDishes = new StringBuilder();
-            for (OrderDetail orderDetail : orderDetailList) {
-                orderDishes.append(orderDetail.getName()).append("*").append(orderDetail.getNumber()).append(";");
-            }
-            orderVO.setOrderDishes(orderDishes.toString());
-            
-            orderVOList.add(orderVO);
-        }
+        // 一次性批量查询当前页所有订单的明细，避免逐条查询
+        List<OrderVO> orderVOList = buildOrderVOList(ordersList);
         
         return new PageResult(pageInfo.getTotal(), orderVOList);
     }
@@ -211,22 +270,9 @@ public class OrderServiceImpl implements OrderService {
             throw new OrderBusinessException("无权查看该订单");
         }
         
-        // 查询订单明细
+        // 查询订单明细并构建OrderVO对象
         List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(id);
-        
-        // 构建OrderVO对象
-        OrderVO orderVO = new OrderVO();
-        BeanUtils.copyProperties(order, orderVO);
-        orderVO.setOrderDetailList(orderDetailList);
-        
-        // 构建订单菜品信息字符串
-        StringBuilder orderDishes = new StringBuilder();
-        for (OrderDetail orderDetail : orderDetailList) {
-            orderDishes.append(orderDetail.getName()).append("*").append(orderDetail.getNumber()).append(";");
-        }
-        orderVO.setOrderDishes(orderDishes.toString());
-        
-        return orderVO;
+        return buildOrderVO(order, orderDetailList);
     }
 
     /**
@@ -236,39 +282,15 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional
     public void cancelOrder(Long id) {
-        // 查询订单
-        Orders ordersDB = orderMapper.getById(id);
-        if (ordersDB == null) {
-            throw new OrderBusinessException("订单不存在");
-        }
-        
-        // 校验订单是否属于当前用户
-        Long currentUserId = BaseContext.getCurrentId();
-        if (!ordersDB.getUserId().equals(currentUserId)) {
-            throw new OrderBusinessException("无权取消该订单");
-        }
-        
-        // 校验订单状态：只有状态为待付款(1)或待接单(2)时才允许取消
-        if (ordersDB.getStatus() > Orders.TO_BE_CONFIRMED) {
-            throw new OrderBusinessException("当前订单状态不允许取消");
-        }
-        
-        // 构造更新对象
+        // 待付款(1)或待接单(2)的订单才允许取消，已支付（待接单）的订单同时退款
         Orders orders = Orders.builder()
-                .id(ordersDB.getId())
+                .id(id)
+                .userId(BaseContext.getCurrentId()) // 只能取消自己的订单
                 .status(Orders.CANCELLED) // 状态改为6（已取消）
                 .cancelReason("用户主动取消")
                 .cancelTime(LocalDateTime.now())
                 .build();
-        
-        // 如果是已支付（待接单）状态取消，将支付状态设置为退款
-        if (ordersDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
-            orders.setPayStatus(Orders.REFUND); // 支付状态改为退款
-            log.info("订单{}已支付，模拟退款处理，支付状态设置为退款", id);
-        }
-        
-        // 执行更新
-        orderMapper.update(orders);
+        transition(orders, Arrays.asList(Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED), true, "当前订单状态不允许取消");
     }
 
     /**
@@ -285,27 +307,197 @@ public class OrderServiceImpl implements OrderService {
         List<Orders> ordersList = orderMapper.pageQuery(ordersPageQueryDTO);
         PageInfo<Orders> pageInfo = new PageInfo<>(ordersList);
         
-        // 遍历订单列表，为每个订单查询订单明细
+        // 一次性批量查询当前页所有订单的明细，避免逐条查询
+        List<OrderVO> orderVOList = buildOrderVOList(ordersList);
+        
+        return new PageResult(pageInfo.getTotal(), orderVOList);
+    }
+
+    /**
+     * 游标分页查询历史订单
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    @Override
+    public CursorPageResult pageQueryByCursor(OrdersPageQueryDTO ordersPageQueryDTO) {
+        // 只能查询当前用户的订单
+        ordersPageQueryDTO.setUserId(BaseContext.getCurrentId());
+        return cursorQuery(ordersPageQueryDTO);
+    }
+
+    /**
+     * 游标分页条件搜索订单
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    @Override
+    public CursorPageResult conditionSearchByCursor(OrdersPageQueryDTO ordersPageQueryDTO) {
+        return cursorQuery(ordersPageQueryDTO);
+    }
+
+    /**
+     * 按(下单时间, 订单ID)定位的游标分页，翻到第N页和第1页的开销相同
+     * 多查一条用于判断是否还有下一页，总记录数只有请求时才统计
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    private CursorPageResult cursorQuery(OrdersPageQueryDTO ordersPageQueryDTO) {
+        int pageSize = ordersPageQueryDTO.getPageSize() <= 0 ? 10 : Math.min(ordersPageQueryDTO.getPageSize(), 100);
+
+        LocalDateTime lastOrderTime = null;
+        Long lastId = null;
+        String cursor = ordersPageQueryDTO.getCursor();
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("_");
+                lastOrderTime = LocalDateTime.parse(parts[0]);
+                lastId = Long.valueOf(parts[1]);
+            } catch (RuntimeException e) {
+                throw new OrderBusinessException("分页游标无效");
+            }
+        }
+
+        List<Orders> ordersList = orderMapper.cursorQuery(ordersPageQueryDTO, lastOrderTime, lastId, pageSize + 1);
+        String nextCursor = null;
+        if (ordersList.size() > pageSize) {
+            ordersList = ordersList.subList(0, pageSize);
+            Orders last = ordersList.get(pageSize - 1);
+            nextCursor = Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((last.getOrderTime() + "_" + last.getId()).getBytes(StandardCharsets.UTF_8));
+        }
+
+        Long total = null;
+        if (Boolean.TRUE.equals(ordersPageQueryDTO.getWithTotal())) {
+            total = PageHelper.count(() -> orderMapper.pageQuery(ordersPageQueryDTO));
+        }
+
+        return new CursorPageResult(buildOrderVOList(ordersList), nextCursor, total);
+    }
+
+    /**
+     * 批量构建订单VO：一次查询出所有订单的明细，再在内存中按订单ID分组
+     * @param ordersList
+     * @return
+     */
+    private List<OrderVO> buildOrderVOList(List<Orders> ordersList) {
         List<OrderVO> orderVOList = new ArrayList<>();
+        if (ordersList == null || ordersList.isEmpty()) {
+            return orderVOList;
+        }
+
+        List<Long> orderIds = new ArrayList<>(ordersList.size());
         for (Orders order : ordersList) {
-            OrderVO orderVO = new OrderVO();
-            BeanUtils.copyProperties(order, orderVO);
-            
-            // 查询订单明细
-            List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(order.getId());
-            orderVO.setOrderDetailList(orderDetailList);
-            
-            // 构建订单菜品信息字符串
-            StringBuilder orderDishes = new StringBuilder();
-            for (OrderDetail orderDetail : orderDetailList) {
-                orderDishes.append(orderDetail.getName()).append("*").append(orderDetail.getNumber()).append(";");
+            orderIds.add(order.getId());
+        }
+
+        // 按订单ID分组
+        Map<Long, List<OrderDetail>> detailMap = new HashMap<>();
+        for (OrderDetail orderDetail : orderDetailMapper.getByOrderIds(orderIds)) {
+            detailMap.computeIfAbsent(orderDetail.getOrderId(), k -> new ArrayList<>()).add(orderDetail);
+        }
+
+        for (Orders order : ordersList) {
+            List<OrderDetail> orderDetailList = detailMap.getOrDefault(order.getId(), new ArrayList<>());
+            orderVOList.add(buildOrderVO(order, orderDetailList));
+        }
+        return orderVOList;
+    }
+
+    /**
+     * 根据订单及其明细构建OrderVO，并拼接订单菜品信息字符串
+     * @param order
+     * @param orderDetailList
+     * @return
+     */
+    private OrderVO buildOrderVO(Orders order, List<OrderDetail> orderDetailList) {
+        OrderVO orderVO = new OrderVO();
+        BeanUtils.copyProperties(order, orderVO);
+        orderVO.setOrderDetailList(orderDetailList);
+
+        // 构建订单菜品信息字符串，例如：宫保鸡丁*3;
+        StringBuilder orderDishes = new StringBuilder();
+        for (OrderDetail orderDetail : orderDetailList) {
+            orderDishes.append(orderDetail.getName()).append("*").append(orderDetail.getNumber()).append(";");
+        }
+        orderVO.setOrderDishes(orderDishes.toString());
+        return orderVO;
+    }
+
+    /**
+     * 订单状态流转：校验当前状态和修改在同一条update语句中完成，避免并发操作互相覆盖
+     * 只允许一个原状态时直接更新，失败后才查询订单区分原因；
+     * 允许多个原状态时需要知道订单是从哪个状态流转过来的，用于维护各状态订单数量，
+     * 先在事务中锁住订单读出当前状态，锁释放前状态不会再变，之后的update一次就能成功
+     * @param orders 订单ID、目标状态及需要同时写入的字段
+     * @param fromStatuses 允许流转的当前状态
+     * @param refundIfPaid 已支付的订单是否同时退款
+     * @param errorMessage 状态不允许时的提示
+     */
+    private void transition(Orders orders, List<Integer> fromStatuses, boolean refundIfPaid, String errorMessage) {
+        Integer fromStatus = fromStatuses.get(0);
+        Long userId = orders.getUserId();
+        if (fromStatuses.size() > 1) {
+            Orders ordersDB = orderMapper.getStatusForUpdate(orders.getId());
+            checkTransition(orders, ordersDB, fromStatuses, errorMessage);
+            fromStatus = ordersDB.getStatus();
+            userId = ordersDB.getUserId();
+        }
+
+        if (orderMapper.updateStatus(orders, fromStatuses, refundIfPaid) > 0) {
+            transitioned(orders, fromStatus, userId);
+            return;
+        }
+        if (fromStatuses.size() == 1) {
+            // 更新失败时再查询订单，区分订单不存在和状态不允许
+            checkTransition(orders, orderMapper.getById(orders.getId()), fromStatuses, errorMessage);
+        }
+        throw new OrderBusinessException(errorMessage);
+    }
+
+    /**
+     * 校验订单是否存在、是否属于当前用户、当前状态是否允许流转
+     * @param orders
+     * @param ordersDB 数据库中的订单
+     * @param fromStatuses
+     * @param errorMessage
+     */
+    private void checkTransition(Orders orders, Orders ordersDB, List<Integer> fromStatuses, String errorMessage) {
+        if (ordersDB == null || (orders.getUserId() != null && !orders.getUserId().equals(ordersDB.getUserId()))) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
+        if (!fromStatuses.contains(ordersDB.getStatus())) {
+            throw new OrderBusinessException(errorMessage);
+        }
+    }
+
+    /**
+     * 流转成功后维护各状态订单数量并通知下单用户
+     * @param orders
+     * @param fromStatus
+     * @param userId 下单用户ID，为空时由通知组件查询
+     */
+    private void transitioned(Orders orders, Integer fromStatus, Long userId) {
+        orderStatusCounter.moved(fromStatus, orders.getStatus(), 1);
+        if (Orders.COMPLETED.equals(orders.getStatus())) {
+            dailyStatsService.ordersCompleted(Collections.singletonList(orders.getId()));
+        }
+        orderNotifier.statusChanged(orders.getId(), userId, orders.getStatus());
+    }
+
+    /**
+     * 查询用户购物车，优先读取Redis购物车，Redis不可用时读取数据库（可能缺少最近还未写回的修改）
+     * @param userId
+     * @return
+     */
+    private List<ShoppingCart> listShoppingCart(Long userId) {
+        if (shoppingCartStore.isEnabled()) {
+            try {
+                return shoppingCartStore.list(userId);
+            } catch (RuntimeException e) {
+                log.warn("读取Redis购物车失败，从数据库读取，用户ID：{}", userId, e);
             }
-            orderVO.setOrderDishes(orderDishes.toString());
-            
-            orderVOList.add(orderVO);
         }
-        
-        return new PageResult(pageInfo.getTotal(), orderVOList);
+        return shoppingCartMapper.list(ShoppingCart.builder().userId(userId).build());
     }
 
     /**
@@ -322,16 +514,14 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public OrderStatisticsVO statistics() {
-        // 分别查询状态为2（待接单）、3（已接单）、4（派送中）的订单数量
-        Integer toBeConfirmedCount = orderMapper.countByStatus(Orders.TO_BE_CONFIRMED); // 2
-        Integer confirmedCount = orderMapper.countByStatus(Orders.CONFIRMED); // 3
-        Integer deliveryInProgressCount = orderMapper.countByStatus(Orders.DELIVERY_IN_PROGRESS); // 4
-        
+        // 从计数器中读取状态为2（待接单）、3（已接单）、4（派送中）的订单数量
+        Map<Integer, Long> statusCount = orderStatusCounter.snapshot();
+
         // 构建OrderStatisticsVO对象
         OrderStatisticsVO orderStatisticsVO = new OrderStatisticsVO();
-        orderStatisticsVO.setToBeConfirmed(toBeConfirmedCount);
-        orderStatisticsVO.setConfirmed(confirmedCount);
-        orderStatisticsVO.setDeliveryInProgress(deliveryInProgressCount);
+        orderStatisticsVO.setToBeConfirmed(OrderStatusCounter.count(statusCount, Orders.TO_BE_CONFIRMED));
+        orderStatisticsVO.setConfirmed(OrderStatusCounter.count(statusCount, Orders.CONFIRMED));
+        orderStatisticsVO.setDeliveryInProgress(OrderStatusCounter.count(statusCount, Orders.DELIVERY_IN_PROGRESS));
         
         return orderStatisticsVO;
     }
@@ -343,26 +533,13 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional
     public void confirm(OrdersConfirmDTO ordersConfirmDTO) {
-        // 查询订单
-        Orders ordersDB = orderMapper.getById(ordersConfirmDTO.getId());
-        if (ordersDB == null) {
-            throw new OrderBusinessException("订单不存在");
-        }
-        
-        // 校验订单状态：只有待接单状态才能接单
-        if (!ordersDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
-            throw new OrderBusinessException("当前订单状态不允许接单");
-        }
-        
-        // 构造更新对象，将订单状态修改为已接单
+        // 只有待接单状态才能接单，将订单状态修改为已接单
         Orders orders = Orders.builder()
-                .id(ordersDB.getId())
+                .id(ordersConfirmDTO.getId())
                 .status(Orders.CONFIRMED) // 状态改为3（已接单）
                 .build();
-        
-        // 执行更新
-        orderMapper.update(orders);
-        
+        transition(orders, Collections.singletonList(Orders.TO_BE_CONFIRMED), false, "当前订单状态不允许接单");
+
         log.info("商家接单成功，订单ID：{}", ordersConfirmDTO.getId());
     }
 
@@ -373,39 +550,15 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional
     public void rejection(OrdersRejectionDTO ordersRejectionDTO) {
-        // 查询订单
-        Orders ordersDB = orderMapper.getById(ordersRejectionDTO.getId());
-        if (ordersDB == null) {
-            throw new OrderBusinessException("订单不存在");
-        }
-        
-        // 校验订单状态：只有待接单状态才能拒单
-        if (!ordersDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
-            throw new OrderBusinessException("当前订单状态不允许拒单");
-        }
-        
-        // 如果订单已支付，需要退款
-        if (ordersDB.getPayStatus() != null && ordersDB.getPayStatus().equals(Orders.PAID)) {
-            // 模拟退款逻辑：修改支付状态为退款
-            Orders refundOrder = Orders.builder()
-                    .id(ordersDB.getId())
-                    .payStatus(Orders.REFUND) // 支付状态改为退款
-                    .build();
-            orderMapper.update(refundOrder);
-            log.info("订单已支付，执行退款操作，订单ID：{}", ordersRejectionDTO.getId());
-        }
-        
-        // 构造更新对象，将订单状态修改为已取消，并记录拒单原因和时间
+        // 只有待接单状态才能拒单，将订单状态修改为已取消，已支付的订单同时退款
         Orders orders = Orders.builder()
-                .id(ordersDB.getId())
+                .id(ordersRejectionDTO.getId())
                 .status(Orders.CANCELLED) // 状态改为6（已取消）
                 .rejectionReason(ordersRejectionDTO.getRejectionReason()) // 记录拒单原因
                 .cancelTime(LocalDateTime.now()) // 记录取消时间
                 .build();
-        
-        // 执行更新
-        orderMapper.update(orders);
-        
+        transition(orders, Collections.singletonList(Orders.TO_BE_CONFIRMED), true, "当前订单状态不允许拒单");
+
         log.info("商家拒单成功，订单ID：{}，拒单原因：{}", ordersRejectionDTO.getId(), ordersRejectionDTO.getRejectionReason());
     }
 
@@ -416,26 +569,13 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional
     public void delivery(Long id) {
-        // 查询订单
-        Orders ordersDB = orderMapper.getById(id);
-        if (ordersDB == null) {
-            throw new OrderBusinessException("订单不存在");
-        }
-        
-        // 校验订单状态：只有已接单状态才能派送
-        if (!ordersDB.getStatus().equals(Orders.CONFIRMED)) {
-            throw new OrderBusinessException("当前订单状态不允许派送");
-        }
-        
-        // 构造更新对象，将订单状态修改为派送中
+        // 只有已接单状态才能派送，将订单状态修改为派送中
         Orders orders = Orders.builder()
                 .id(id)
                 .status(Orders.DELIVERY_IN_PROGRESS) // 状态改为4（派送中）
                 .build();
-        
-        // 执行更新
-        orderMapper.update(orders);
-        
+        transition(orders, Collections.singletonList(Orders.CONFIRMED), false, "当前订单状态不允许派送");
+
         log.info("订单派送成功，订单ID：{}", id);
     }
 
@@ -446,27 +586,14 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional
     public void complete(Long id) {
-        // 查询订单
-        Orders ordersDB = orderMapper.getById(id);
-        if (ordersDB == null) {
-            throw new OrderBusinessException("订单不存在");
-        }
-        
-        // 校验订单状态：只有派送中状态才能完成
-        if (!ordersDB.getStatus().equals(Orders.DELIVERY_IN_PROGRESS)) {
-            throw new OrderBusinessException("当前订单状态不允许完成");
-        }
-        
-        // 构造更新对象，将订单状态修改为已完成，并记录送达时间
+        // 只有派送中状态才能完成，将订单状态修改为已完成，并记录送达时间
         Orders orders = Orders.builder()
                 .id(id)
                 .status(Orders.COMPLETED) // 状态改为5（已完成）
                 .deliveryTime(LocalDateTime.now()) // 记录送达时间
                 .build();
-        
-        // 执行更新
-        orderMapper.update(orders);
-        
+        transition(orders, Collections.singletonList(Orders.DELIVERY_IN_PROGRESS), false, "当前订单状态不允许完成");
+
         log.info("订单完成成功，订单ID：{}", id);
     }
 
@@ -477,34 +604,17 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional
     public void cancelByAdmin(OrdersCancelDTO ordersCancelDTO) {
-        // 查询订单
-        Orders ordersDB = orderMapper.getById(ordersCancelDTO.getId());
-        if (ordersDB == null) {
-            throw new OrderBusinessException("订单不存在");
-        }
-        
-        // 如果订单已支付，需要退款
-        if (ordersDB.getPayStatus() != null && ordersDB.getPayStatus().equals(Orders.PAID)) {
-            // 模拟退款逻辑：修改支付状态为退款
-            Orders refundOrder = Orders.builder()
-                    .id(ordersCancelDTO.getId())
-                    .payStatus(Orders.REFUND) // 支付状态改为退款
-                    .build();
-            orderMapper.update(refundOrder);
-            log.info("订单已支付，执行退款操作，订单ID：{}", ordersCancelDTO.getId());
-        }
-        
-        // 构造更新对象，将订单状态修改为已取消，并记录取消原因和时间
+        // 已完成或已取消的订单不能再取消，将订单状态修改为已取消，已支付的订单同时退款
         Orders orders = Orders.builder()
                 .id(ordersCancelDTO.getId())
                 .status(Orders.CANCELLED) // 状态改为6（已取消）
                 .cancelReason(ordersCancelDTO.getCancelReason()) // 记录取消原因
                 .cancelTime(LocalDateTime.now()) // 记录取消时间
                 .build();
-        
-        // 执行更新
-        orderMapper.update(orders);
-        
+        transition(orders,
+                Arrays.asList(Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS),
+                true, "当前订单状态不允许取消");
+
         log.info("商家取消订单成功，订单ID：{}，取消原因：{}", ordersCancelDTO.getId(), ordersCancelDTO.getCancelReason());
     }
 
@@ -525,26 +635,19 @@ public class OrderServiceImpl implements OrderService {
             throw new OrderBusinessException("订单不存在");
         }
 
-        // 3. 根据订单id更新订单的状态、支付方式、支付状态、结账时间
+        // 3. 根据订单id更新订单的状态、支付状态、结账时间，只有待付款的订单才能支付
         Orders orders = Orders.builder()
                 .id(ordersDB.getId())
                 .status(Orders.TO_BE_CONFIRMED)
                 .payStatus(Orders.PAID)
                 .checkoutTime(LocalDateTime.now())
                 .build();
-
-        orderMapper.update(orders);
-        
-        // 4. 通过WebSocket向客户端推送消息 type=1表示来单提醒
-        Map<String, Object> map = new HashMap<>();
-        map.put("type", 1); // 1表示来单提醒
-        map.put("orderId", ordersDB.getId());
-        map.put("content", "订单号：" + outTradeNo);
+        transition(orders, Collections.singletonList(Orders.PENDING_PAYMENT), false, MessageConstant.ORDER_STATUS_ERROR);
         
-        String json = JSON.toJSONString(map);
-        webSocketServer.sendToAllClient(json);
+        // 4. 通过WebSocket向商家端推送来单提醒
+        orderNotifier.newOrder(ordersDB.getId(), outTradeNo);
         
-        log.info("支付成功，订单号：{}，已向客户端推送来单提醒", outTradeNo);
+        log.info("支付成功，订单号：{}，已向商家端推送来单提醒", outTradeNo);
     }
 
     /**
@@ -559,15 +662,37 @@ public class OrderServiceImpl implements OrderService {
             throw new OrderBusinessException("订单不存在");
         }
         
-        // 通过WebSocket向客户端推送催单消息 type=2表示客户催单
-        Map<String, Object> map = new HashMap<>();
-        map.put("type", 2); // 2表示客户催单
-        map.put("orderId", ordersDB.getId());
-        map.put("content", "订单号：" + ordersDB.getNumber());
-        
-        String json = JSON.toJSONString(map);
-        webSocketServer.sendToAllClient(json);
+        // 通过WebSocket向商家端推送催单消息，短时间内重复催单不再推送
+        if (!orderNotifier.reminder(ordersDB.getId(), ordersDB.getNumber())) {
+            log.info("订单{}近期已催单，忽略本次催单", id);
+            return;
+        }
         
-        log.info("客户催单，订单ID：{}，订单号：{}，已向客户端推送催单提醒", id, ordersDB.getNumber());
+        log.info("客户催单，订单ID：{}，订单号：{}，已向商家端推送催单提醒", id, ordersDB.getNumber());
+    }
+
+    /**
+     * 再来一单，按订单明细批量加入购物车，价格按商品当前价格计算
+     * @param id 订单ID
+     */
+    @Override
+    public void repetition(Long id) {
+        Long userId = getCurrentUserId();
+        Orders ordersDB = orderMapper.getById(id);
+        if (ordersDB == null || !userId.equals(ordersDB.getUserId())) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
+
+        List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(id);
+        List<ShoppingCartDTO> shoppingCartDTOList = new ArrayList<>(orderDetailList.size());
+        for (OrderDetail orderDetail : orderDetailList) {
+            ShoppingCartDTO shoppingCartDTO = new ShoppingCartDTO();
+            shoppingCartDTO.setDishId(orderDetail.getDishId());
+            shoppingCartDTO.setSetmealId(orderDetail.getSetmealId());
+            shoppingCartDTO.setDishFlavor(orderDetail.getDishFlavor());
+            shoppingCartDTO.setNumber(orderDetail.getNumber());
+            shoppingCartDTOList.add(shoppingCartDTO);
+        }
+        shoppingCartService.addShoppingCartBatch(shoppingCartDTOList);
     }
-}
\ No newline at end of file
+}
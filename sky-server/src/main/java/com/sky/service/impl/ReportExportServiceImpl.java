@@ -0,0 +1,513 @@
+package com.sky.service.impl;
+
+import com.sky.entity.DailyBusinessStats;
+import com.sky.entity.Orders;
+import com.sky.exception.ReportBusinessException;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.ReportExportProperties;
+import com.sky.service.DailyStatsService;
+import com.sky.service.ReportExportService;
+import com.sky.service.ReportService;
+import com.sky.service.WorkspaceService;
+import com.sky.vo.BusinessDataVO;
+import com.sky.vo.OrderReportVO;
+import com.sky.vo.ReportExportJobVO;
+import com.sky.vo.SalesTop10ReportVO;
+import com.sky.vo.TurnoverReportVO;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+@Slf4j
+public class ReportExportServiceImpl implements ReportExportService {
+
+    private static final String TEMPLATE = "template/运营数据报表模板.xlsx";
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * 单个sheet最多写入的订单行数（xlsx单sheet上限为1048576行），超出后自动新建sheet
+     */
+    private static final int MAX_ROWS_PER_SHEET = 1000000;
+
+    /**
+     * 排队中的异步任务上限
+     */
+    private static final int MAX_QUEUED_JOBS = 20;
+
+    @Autowired
+    private ReportService reportService;
+    @Autowired
+    private WorkspaceService workspaceService;
+    @Autowired
+    private DailyStatsService dailyStatsService;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private ReportExportProperties reportExportProperties;
+
+    /**
+     * 限制同时进行的导出数量，同步导出和异步任务共用
+     */
+    private Semaphore exportPermits;
+
+    private ExecutorService exportExecutor;
+
+    private final Map<String, ReportExportJobVO> jobMap = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        int maxConcurrent = Math.max(1, reportExportProperties.getMaxConcurrent());
+        exportPermits = new Semaphore(maxConcurrent);
+        AtomicInteger threadIndex = new AtomicInteger();
+        exportExecutor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(MAX_QUEUED_JOBS),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "report-export-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        exportExecutor.shutdownNow();
+    }
+
+    /**
+     * 同步导出运营数据报表
+     * @param begin 开始日期
+     * @param end 结束日期
+     * @param out 输出流
+     */
+    @Override
+    public void export(LocalDate begin, LocalDate end, OutputStream out) {
+        checkRange(begin, end);
+        if (!exportPermits.tryAcquire()) {
+            throw new ReportBusinessException("当前导出任务过多，请稍后再试或使用异步导出");
+        }
+        try {
+            writeWorkbook(begin, end, out);
+        } catch (IOException e) {
+            log.error("Excel报表导出失败：", e);
+            throw new ReportBusinessException("报表导出失败");
+        } finally {
+            exportPermits.release();
+        }
+    }
+
+    /**
+     * 提交异步导出任务
+     * @param begin 开始日期
+     * @param end 结束日期
+     * @return
+     */
+    @Override
+    public ReportExportJobVO submit(LocalDate begin, LocalDate end) {
+        checkRange(begin, end);
+        ReportExportJobVO job = ReportExportJobVO.builder()
+                .jobId(UUID.randomUUID().toString().replace("-", ""))
+                .status(ReportExportJobVO.PENDING)
+                .begin(begin)
+                .end(end)
+                .createTime(LocalDateTime.now())
+                .build();
+        jobMap.put(job.getJobId(), job);
+
+        try {
+            exportExecutor.execute(() -> runJob(job));
+        } catch (RejectedExecutionException e) {
+            jobMap.remove(job.getJobId());
+            throw new ReportBusinessException("排队中的导出任务过多，请稍后再试");
+        }
+        log.info("提交异步导出任务：{}，{} ~ {}", job.getJobId(), begin, end);
+        return job;
+    }
+
+    /**
+     * 查询异步导出任务状态
+     * @param jobId
+     * @return
+     */
+    @Override
+    public ReportExportJobVO getJob(String jobId) {
+        ReportExportJobVO job = jobMap.get(jobId);
+        if (job == null) {
+            throw new ReportBusinessException("导出任务不存在或已过期");
+        }
+        return job;
+    }
+
+    /**
+     * 获取已完成的异步导出任务生成的文件
+     * @param jobId
+     * @return
+     */
+    @Override
+    public File getJobFile(String jobId) {
+        ReportExportJobVO job = getJob(jobId);
+        if (!ReportExportJobVO.SUCCESS.equals(job.getStatus())) {
+            throw new ReportBusinessException("导出任务尚未完成");
+        }
+        File file = jobFile(jobId);
+        if (!file.exists()) {
+            throw new ReportBusinessException("导出文件不存在或已过期");
+        }
+        return file;
+    }
+
+    /**
+     * 清理过期的异步导出任务及文件
+     */
+    @Override
+    public void cleanExpiredJobs() {
+        LocalDateTime expireTime = LocalDateTime.now().minusMinutes(reportExportProperties.getFileTtlMinutes());
+        Iterator<ReportExportJobVO> iterator = jobMap.values().iterator();
+        while (iterator.hasNext()) {
+            ReportExportJobVO job = iterator.next();
+            if (job.getFinishTime() != null && job.getFinishTime().isBefore(expireTime)) {
+                iterator.remove();
+                if (jobFile(job.getJobId()).delete()) {
+                    log.info("删除过期的导出文件，任务ID：{}", job.getJobId());
+                }
+            }
+        }
+    }
+
+    /**
+     * 执行异步导出任务，写入本地文件
+     * @param job
+     */
+    private void runJob(ReportExportJobVO job) {
+        File file = jobFile(job.getJobId());
+        try {
+            exportPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finishJob(job, ReportExportJobVO.FAILED, null, "导出任务被中断");
+            return;
+        }
+        try {
+            job.setStatus(ReportExportJobVO.RUNNING);
+            Files.createDirectories(file.getParentFile().toPath());
+            try (OutputStream out = Files.newOutputStream(file.toPath())) {
+                writeWorkbook(job.getBegin(), job.getEnd(), out);
+            }
+            finishJob(job, ReportExportJobVO.SUCCESS, file.length(), null);
+            log.info("异步导出任务完成：{}，文件大小：{}字节", job.getJobId(), file.length());
+        } catch (Exception e) {
+            log.error("异步导出任务失败：{}", job.getJobId(), e);
+            file.delete();
+            finishJob(job, ReportExportJobVO.FAILED, null, "报表导出失败");
+        } finally {
+            exportPermits.release();
+        }
+    }
+
+    private void finishJob(ReportExportJobVO job, String status, Long fileSize, String message) {
+        job.setFileSize(fileSize);
+        job.setMessage(message);
+        job.setFinishTime(LocalDateTime.now());
+        job.setStatus(status);
+    }
+
+    private File jobFile(String jobId) {
+        return new File(reportExportProperties.getDir(), jobId + ".xlsx");
+    }
+
+    /**
+     * 校验导出的日期范围
+     * @param begin
+     * @param end
+     */
+    private void checkRange(LocalDate begin, LocalDate end) {
+        if (begin == null || end == null || begin.isAfter(end)) {
+            throw new ReportBusinessException("导出日期范围不正确");
+        }
+        if (ChronoUnit.DAYS.between(begin, end) + 1 > reportExportProperties.getMaxRangeDays()) {
+            throw new ReportBusinessException("单次导出最多" + reportExportProperties.getMaxRangeDays() + "天");
+        }
+    }
+
+    /**
+     * 生成报表：概览sheet基于模板填充，每日明细和订单明细使用SXSSF流式写入，
+     * 内存中只保留rowWindow行，其余行写入临时文件
+     * @param begin
+     * @param end
+     * @param out
+     * @throws IOException
+     */
+    private void writeWorkbook(LocalDate begin, LocalDate end, OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+
+        // 1. 概览数据（汇总查询，数据量与日期范围无关）
+        TurnoverReportVO turnoverReport = reportService.getTurnoverStatistics(begin, end);
+        OrderReportVO orderReport = reportService.getOrderStatistics(begin, end);
+        SalesTop10ReportVO top10Report = reportService.getTop10(begin, end);
+        BusinessDataVO businessData = workspaceService.getBusinessData(
+                LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end, LocalTime.MAX));
+
+        XSSFWorkbook template;
+        try (InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream(TEMPLATE)) {
+            if (inputStream != null) {
+                template = new XSSFWorkbook(inputStream);
+                XSSFSheet sheet = template.getSheetAt(0);
+                fillBusinessDataToExcel(sheet, businessData);
+                fillHistoryDataToExcel(sheet, turnoverReport, orderReport, top10Report);
+            } else {
+                template = new XSSFWorkbook();
+                fillBusinessDataToNewSheet(template.createSheet("运营数据报表"), businessData);
+            }
+        }
+
+        // 2. 在模板基础上流式写入明细sheet
+        SXSSFWorkbook excel = new SXSSFWorkbook(template, reportExportProperties.getRowWindow());
+        excel.setCompressTempFiles(true);
+        try {
+            writeDailySheet(excel, begin, end);
+            int orderRows = writeOrderSheets(excel, begin, end);
+
+            excel.write(out);
+            out.flush();
+            log.info("Excel报表生成完成：{} ~ {}，订单明细{}行，耗时{}ms",
+                    begin, end, orderRows, System.currentTimeMillis() - start);
+        } finally {
+            // 删除SXSSF产生的临时文件
+            excel.dispose();
+            excel.close();
+        }
+    }
+
+    /**
+     * 写入每日明细sheet
+     * @param excel
+     * @param begin
+     * @param end
+     */
+    private void writeDailySheet(SXSSFWorkbook excel, LocalDate begin, LocalDate end) {
+        Map<LocalDate, DailyBusinessStats> statsMap = dailyStatsService.getDailyStats(begin, end);
+
+        Sheet sheet = excel.createSheet("每日明细");
+        writeRow(sheet.createRow(0), "日期", "营业额", "订单总数", "有效订单数", "订单完成率", "平均客单价", "新增用户数");
+
+        int rowIndex = 1;
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            DailyBusinessStats stats = statsMap.get(date);
+            double turnover = stats == null || stats.getTurnover() == null ? 0.0 : stats.getTurnover().doubleValue();
+            int orderCount = stats == null || stats.getOrderCount() == null ? 0 : stats.getOrderCount();
+            int validOrderCount = stats == null || stats.getValidOrderCount() == null ? 0 : stats.getValidOrderCount();
+            int newUsers = stats == null || stats.getNewUsers() == null ? 0 : stats.getNewUsers();
+
+            Row row = sheet.createRow(rowIndex++);
+            row.createCell(0).setCellValue(date.toString());
+            row.createCell(1).setCellValue(turnover);
+            row.createCell(2).setCellValue(orderCount);
+            row.createCell(3).setCellValue(validOrderCount);
+            row.createCell(4).setCellValue(orderCount == 0 ? 0.0 : (double) validOrderCount / orderCount);
+            row.createCell(5).setCellValue(validOrderCount == 0 ? 0.0 : turnover / validOrderCount);
+            row.createCell(6).setCellValue(newUsers);
+        }
+    }
+
+    /**
+     * 流式读取订单并写入订单明细sheet，单个sheet写满后自动新建
+     * @param excel
+     * @param begin
+     * @param end
+     * @return 写入的订单行数
+     */
+    private int writeOrderSheets(SXSSFWorkbook excel, LocalDate begin, LocalDate end) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("begin", LocalDateTime.of(begin, LocalTime.MIN));
+        map.put("end", LocalDateTime.of(end, LocalTime.MAX));
+
+        Sheet[] sheet = {createOrderSheet(excel, 1)};
+        int[] rowIndex = {1};
+        int[] total = {0};
+        orderMapper.streamByOrderTime(map, context -> {
+            if (rowIndex[0] > MAX_ROWS_PER_SHEET) {
+                sheet[0] = createOrderSheet(excel, excel.getNumberOfSheets());
+                rowIndex[0] = 1;
+            }
+            Orders order = context.getResultObject();
+            Row row = sheet[0].createRow(rowIndex[0]++);
+            row.createCell(0).setCellValue(order.getNumber());
+            row.createCell(1).setCellValue(order.getOrderTime() == null ? "" : order.getOrderTime().format(DATE_TIME_FORMATTER));
+            row.createCell(2).setCellValue(statusName(order.getStatus()));
+            row.createCell(3).setCellValue(order.getAmount() == null ? 0.0 : order.getAmount().doubleValue());
+            row.createCell(4).setCellValue(order.getConsignee());
+            row.createCell(5).setCellValue(order.getPhone());
+            row.createCell(6).setCellValue(order.getAddress());
+            total[0]++;
+        });
+        return total[0];
+    }
+
+    private Sheet createOrderSheet(SXSSFWorkbook excel, int index) {
+        Sheet sheet = excel.createSheet(index == 1 ? "订单明细" : "订单明细" + index);
+        writeRow(sheet.createRow(0), "订单号", "下单时间", "订单状态", "实收金额", "收货人", "手机号", "地址");
+        return sheet;
+    }
+
+    private void writeRow(Row row, String... values) {
+        for (int i = 0; i < values.length; i++) {
+            row.createCell(i).setCellValue(values[i]);
+        }
+    }
+
+    private String statusName(Integer status) {
+        if (status == null) {
+            return "";
+        }
+        switch (status) {
+            case 1:
+                return "待付款";
+            case 2:
+                return "待接单";
+            case 3:
+                return "已接单";
+            case 4:
+                return "派送中";
+            case 5:
+                return "已完成";
+            case 6:
+                return "已取消";
+            default:
+                return String.valueOf(status);
+        }
+    }
+
+    /**
+     * 没有模板时，新建sheet写入运营数据
+     * @param sheet
+     * @param businessData
+     */
+    private void fillBusinessDataToNewSheet(XSSFSheet sheet, BusinessDataVO businessData) {
+        sheet.createRow(0).createCell(0).setCellValue("统计项");
+        sheet.getRow(0).createCell(1).setCellValue("统计结果");
+
+        String[] names = {"营业额", "有效订单数", "订单完成率", "平均客单价", "新增用户数"};
+        double[] values = {businessData.getTurnover(), businessData.getValidOrderCount(),
+                businessData.getOrderCompletionRate(), businessData.getUnitPrice(), businessData.getNewUsers()};
+        for (int i = 0; i < names.length; i++) {
+            Row row = sheet.createRow(i + 1);
+            row.createCell(0).setCellValue(names[i]);
+            row.createCell(1).setCellValue(values[i]);
+        }
+    }
+
+    /**
+     * 填充运营数据到Excel模板
+     * @param sheet
+     * @param businessData
+     */
+    private void fillBusinessDataToExcel(XSSFSheet sheet, BusinessDataVO businessData) {
+        // 根据模板结构填充数据，这里需要根据实际模板调整单元格位置
+        
+        // 营业额 - B2单元格
+        if (sheet.getRow(1) != null && sheet.getRow(1).getCell(1) != null) {
+            sheet.getRow(1).getCell(1).setCellValue(businessData.getTurnover());
+        }
+        
+        // 有效订单数 - B3单元格
+        if (sheet.getRow(2) != null && sheet.getRow(2).getCell(1) != null) {
+            sheet.getRow(2).getCell(1).setCellValue(businessData.getValidOrderCount());
+        }
+        
+        // 订单完成率 - B4单元格
+        if (sheet.getRow(3) != null && sheet.getRow(3).getCell(1) != null) {
+            sheet.getRow(3).getCell(1).setCellValue(businessData.getOrderCompletionRate());
+        }
+        
+        // 平均客单价 - B5单元格
+        if (sheet.getRow(4) != null && sheet.getRow(4).getCell(1) != null) {
+            sheet.getRow(4).getCell(1).setCellValue(businessData.getUnitPrice());
+        }
+        
+        // 新增用户数 - B6单元格
+        if (sheet.getRow(5) != null && sheet.getRow(5).getCell(1) != null) {
+            sheet.getRow(5).getCell(1).setCellValue(businessData.getNewUsers());
+        }
+    }
+
+    /**
+     * 填充历史统计数据到Excel模板
+     * @param sheet
+     * @param turnoverReport
+     * @param orderReport
+     * @param top10Report
+     */
+    private void fillHistoryDataToExcel(XSSFSheet sheet, TurnoverReportVO turnoverReport,
+                                      OrderReportVO orderReport, SalesTop10ReportVO top10Report) {
+        // 填充区间总营业额
+        if (sheet.getRow(7) != null && sheet.getRow(7).getCell(1) != null && turnoverReport.getTurnoverList() != null) {
+            // 将逗号分隔的字符串转换为Double数组，然后求和
+            Double totalTurnover = Arrays.stream(turnoverReport.getTurnoverList().split(","))
+                    .mapToDouble(Double::parseDouble)
+                    .sum();
+            sheet.getRow(7).getCell(1).setCellValue(totalTurnover);
+        }
+        
+        // 填充区间总订单数
+        if (sheet.getRow(8) != null && sheet.getRow(8).getCell(1) != null && orderReport.getOrderCountList() != null) {
+            // 将逗号分隔的字符串转换为Integer数组，然后求和
+            Integer totalOrders = Arrays.stream(orderReport.getOrderCountList().split(","))
+                    .mapToInt(Integer::parseInt)
+                    .sum();
+            sheet.getRow(8).getCell(1).setCellValue(totalOrders);
+        }
+        
+        // 填充销量Top10数据
+        if (top10Report != null && top10Report.getNameList() != null && !top10Report.getNameList().isEmpty()
+                && top10Report.getNumberList() != null) {
+            // 将逗号分隔的字符串转换为列表
+            List<String> nameList = Arrays.asList(top10Report.getNameList().split(","));
+            List<String> numberList = Arrays.asList(top10Report.getNumberList().split(","));
+            
+            for (int i = 0; i < Math.min(nameList.size(), 10); i++) {
+                int rowIndex = 10 + i;
+                if (sheet.getRow(rowIndex) != null) {
+                    if (sheet.getRow(rowIndex).getCell(0) != null) {
+                        sheet.getRow(rowIndex).getCell(0).setCellValue(nameList.get(i));
+                    }
+                    if (sheet.getRow(rowIndex).getCell(1) != null) {
+                        sheet.getRow(rowIndex).getCell(1).setCellValue(Integer.parseInt(numberList.get(i)));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,8 +1,9 @@
 package com.sky.service.impl;
 
-import com.sky.entity.Orders;
-import com.sky.mapper.OrderMapper;
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.entity.DailyBusinessStats;
 import com.sky.mapper.UserMapper;
+import com.sky.service.DailyStatsService;
 import com.sky.service.ReportService;
 import com.sky.vo.OrderReportVO;
 import com.sky.vo.SalesTop10ReportVO;
@@ -25,10 +26,10 @@ import java.util.Map;
 public class ReportServiceImpl implements ReportService {
 
     @Autowired
-    private OrderMapper orderMapper;
+    private UserMapper userMapper;
 
     @Autowired
-    private UserMapper userMapper;
+    private DailyStatsService dailyStatsService;
 
     /**
      * 营业额统计
@@ -39,32 +40,16 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public TurnoverReportVO getTurnoverStatistics(LocalDate begin, LocalDate end) {
         // 获取日期范围内的所有日期
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-        
-        while (!begin.equals(end)) {
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
+        List<LocalDate> dateList = getDateList(begin, end);
 
-        // 存放每天的营业额
+        // 查询区间内每天的统计数据：已封存的日期读汇总表，其余日期按天分组统计原始订单
+        Map<LocalDate, DailyBusinessStats> statsMap = dailyStatsService.getDailyStats(begin, end);
+
+        // 存放每天的营业额，没有订单的日期补0
         List<Double> turnoverList = new ArrayList<>();
-        
-        // 遍历日期列表，查询每天的营业额
         for (LocalDate date : dateList) {
-            // 查询指定日期完成的订单的总金额
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            
-            // 构建查询条件
-            Map<String, Object> map = new HashMap<>();
-            map.put("begin", beginTime);
-            map.put("end", endTime);
-            map.put("status", Orders.COMPLETED);
-            
-            Double turnover = orderMapper.sumByMap(map);
-            turnover = turnover == null ? 0.0 : turnover;
-            turnoverList.add(turnover);
+            DailyBusinessStats stats = statsMap.get(date);
+            turnoverList.add(stats == null || stats.getTurnover() == null ? 0.0 : stats.getTurnover().doubleValue());
         }
 
         // 封装结果数据
@@ -83,36 +68,28 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public UserReportVO getUserStatistics(LocalDate begin, LocalDate end) {
         // 获取日期范围内的所有日期
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-        
-        while (!begin.equals(end)) {
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
+        List<LocalDate> dateList = getDateList(begin, end);
+
+        // 查询开始日期之前的用户总数，作为累计的基数
+        Map<String, Object> baseMap = new HashMap<>();
+        baseMap.put("end", LocalDateTime.of(begin.minusDays(1), LocalTime.MAX));
+        Integer baseCount = userMapper.countByMap(baseMap);
+        int totalUserCount = baseCount == null ? 0 : baseCount;
+
+        // 查询区间内每天的新增用户数：已封存的日期读汇总表，其余日期按天分组统计原始用户表
+        Map<LocalDate, DailyBusinessStats> statsMap = dailyStatsService.getDailyStats(begin, end);
 
         // 存放每天的新增用户数
         List<Integer> newUserList = new ArrayList<>();
-        // 存放截止到每天的总用户数
+        // 存放截止到每天的总用户数（在内存中累加）
         List<Integer> totalUserList = new ArrayList<>();
-        
-        // 遍历日期列表，查询每天的用户数据
+
         for (LocalDate date : dateList) {
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            
-            // 查询新增用户数（当天创建的用户）
-            Map<String, Object> newUserMap = new HashMap<>();
-            newUserMap.put("begin", beginTime);
-            newUserMap.put("end", endTime);
-            Integer newUserCount = userMapper.countByMap(newUserMap);
-            newUserList.add(newUserCount == null ? 0 : newUserCount);
-            
-            // 查询总用户数（截止到当天，不限制开始时间）
-            Map<String, Object> totalUserMap = new HashMap<>();
-            totalUserMap.put("end", endTime);
-            Integer totalUserCount = userMapper.countByMap(totalUserMap);
-            totalUserList.add(totalUserCount == null ? 0 : totalUserCount);
+            DailyBusinessStats stats = statsMap.get(date);
+            int newUserCount = stats == null || stats.getNewUsers() == null ? 0 : stats.getNewUsers();
+            totalUserCount += newUserCount;
+            newUserList.add(newUserCount);
+            totalUserList.add(totalUserCount);
         }
 
         // 封装结果数据
@@ -132,38 +109,25 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public OrderReportVO getOrderStatistics(LocalDate begin, LocalDate end) {
         // 获取日期范围内的所有日期
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-        
-        while (!begin.equals(end)) {
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
+        List<LocalDate> dateList = getDateList(begin, end);
+
+        // 查询区间内每天的统计数据：已封存的日期读汇总表，其余日期按天分组统计原始订单
+        Map<LocalDate, DailyBusinessStats> statsMap = dailyStatsService.getDailyStats(begin, end);
 
         // 存放每天的订单总数
         List<Integer> orderCountList = new ArrayList<>();
         // 存放每天的有效订单数（状态为已完成）
         List<Integer> validOrderCountList = new ArrayList<>();
-        
-        // 遍历日期列表，查询每天的订单数据
+
         for (LocalDate date : dateList) {
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            
-            // 查询当天订单总数（不限制状态）
-            Map<String, Object> orderMap = new HashMap<>();
-            orderMap.put("begin", beginTime);
-            orderMap.put("end", endTime);
-            Integer orderCount = orderMapper.countByMap(orderMap);
-            orderCountList.add(orderCount == null ? 0 : orderCount);
-            
-            // 查询当天有效订单数（状态为已完成）
-            Map<String, Object> validOrderMap = new HashMap<>();
-            validOrderMap.put("begin", beginTime);
-            validOrderMap.put("end", endTime);
-            validOrderMap.put("status", Orders.COMPLETED);
-            Integer validOrderCount = orderMapper.countByMap(validOrderMap);
-            validOrderCountList.add(validOrderCount == null ? 0 : validOrderCount);
+            DailyBusinessStats stats = statsMap.get(date);
+            if (stats == null) {
+                orderCountList.add(0);
+                validOrderCountList.add(0);
+                continue;
+            }
+            orderCountList.add(stats.getOrderCount() == null ? 0 : stats.getOrderCount());
+            validOrderCountList.add(stats.getValidOrderCount() == null ? 0 : stats.getValidOrderCount());
         }
 
         // 计算总订单数和有效订单数
@@ -195,23 +159,16 @@ public class ReportServiceImpl implements ReportService {
      */
     @Override
     public SalesTop10ReportVO getTop10(LocalDate begin, LocalDate end) {
-        LocalDateTime beginTime = LocalDateTime.of(begin, LocalTime.MIN);
-        LocalDateTime endTime = LocalDateTime.of(end, LocalTime.MAX);
-        
-        Map<String, Object> map = new HashMap<>();
-        map.put("begin", beginTime);
-        map.put("end", endTime);
-        
-        // 查询销量排名Top10
-        List<Map<String, Object>> top10List = orderMapper.getSalesTop10(map);
+        // 查询销量排名Top10：已封存的日期读商品销量汇总表，其余日期统计原始订单
+        List<GoodsSalesDTO> top10List = dailyStatsService.getSalesTop10(begin, end);
         
         // 处理结果数据
         List<String> nameList = new ArrayList<>();
         List<Integer> numberList = new ArrayList<>();
         
-        for (Map<String, Object> item : top10List) {
-            nameList.add(item.get("name").toString());
-            numberList.add(Integer.valueOf(item.get("number").toString()));
+        for (GoodsSalesDTO item : top10List) {
+            nameList.add(item.getName());
+            numberList.add(item.getNumber());
         }
 
         // 封装结果数据
@@ -220,4 +177,21 @@ public class ReportServiceImpl implements ReportService {
                 .numberList(String.join(",", numberList.stream().map(String::valueOf).toArray(String[]::new)))
                 .build();
     }
+
+    /**
+     * 获取日期范围内的所有日期（包含首尾）
+     * @param begin
+     * @param end
+     * @return
+     */
+    private List<LocalDate> getDateList(LocalDate begin, LocalDate end) {
+        List<LocalDate> dateList = new ArrayList<>();
+        dateList.add(begin);
+
+        while (!begin.equals(end)) {
+            begin = begin.plusDays(1);
+            dateList.add(begin);
+        }
+        return dateList;
+    }
 }
\ No newline at end of file
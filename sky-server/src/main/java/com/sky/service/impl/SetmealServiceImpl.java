@@ -20,6 +20,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -153,4 +154,30 @@ public class SetmealServiceImpl implements SetmealService {
     public List<DishItemVO> getDishItemById(Long id) {
         return setmealMapper.getDishItemBySetmealId(id);
     }
+
+    /**
+     * 根据套餐ID集合查询涉及的分类ID
+     * @param ids
+     * @return
+     */
+    @Override
+    public List<Long> getCategoryIdsByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return setmealMapper.getCategoryIdsByIds(ids);
+    }
+
+    /**
+     * 根据菜品ID集合查询包含这些菜品的套餐所属的分类ID
+     * @param dishIds
+     * @return
+     */
+    @Override
+    public List<Long> getCategoryIdsByDishIds(List<Long> dishIds) {
+        if (dishIds == null || dishIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return setmealMapper.getCategoryIdsByDishIds(dishIds);
+    }
 }
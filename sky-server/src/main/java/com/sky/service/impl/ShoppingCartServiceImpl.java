@@ -1,20 +1,24 @@
 package com.sky.service.impl;
 
+import com.sky.cache.CatalogSnapshot;
+import com.sky.cache.ShoppingCartStore;
+import com.sky.constant.MessageConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.ShoppingCartDTO;
 import com.sky.entity.Dish;
 import com.sky.entity.Setmeal;
 import com.sky.entity.ShoppingCart;
-import com.sky.mapper.DishMapper;
-import com.sky.mapper.SetmealMapper;
+import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.ShoppingCartMapper;
 import com.sky.service.ShoppingCartService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -24,63 +28,122 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
     @Autowired
     private ShoppingCartMapper shoppingCartMapper;
     @Autowired
-    private DishMapper dishMapper;
+    private CatalogSnapshot catalogSnapshot;
     @Autowired
-    private SetmealMapper setmealMapper;
+    private ShoppingCartStore shoppingCartStore;
 
     /**
      * 添加购物车
      * @param shoppingCartDTO
      */
     public void addShoppingCart(ShoppingCartDTO shoppingCartDTO) {
-        //判断当前加入到购物车中的商品是否已经存在了
         ShoppingCart shoppingCart = new ShoppingCart();
         BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
         Long userId = BaseContext.getCurrentId();
         shoppingCart.setUserId(userId);
 
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
+        if (shoppingCartStore.isEnabled()) {
+            //Redis购物车：数量加一由Lua脚本原子完成，新商品才需要查询名称、图片、单价
+            shoppingCartStore.add(shoppingCart, this::fillItem);
+            return;
+        }
 
-        //如果已经存在了，只需要将数量加一
-        if (list != null && list.size() > 0) {
-            ShoppingCart cart = list.get(0);
-            cart.setNumber(cart.getNumber() + 1);//update shopping_cart set number = ? where id = ?
-            shoppingCartMapper.updateNumberById(cart);
-        } else {
-            //如果不存在，需要插入一条购物车数据
-            //判断本次添加到购物车的是菜品还是套餐
-            Long dishId = shoppingCartDTO.getDishId();
-            Long setmealId = shoppingCartDTO.getSetmealId();
-
-            if (dishId != null) {
-                //本次添加到购物车的是菜品
-                Dish dish = dishMapper.getById(dishId);
+        //如果已经存在了，只需要将数量加一：update shopping_cart set number = number + 1 where ...
+        if (shoppingCartMapper.incrementNumber(shoppingCart) > 0) {
+            return;
+        }
+
+        //如果不存在，需要插入一条购物车数据，并发插入同一商品时由唯一索引合并为数量加一
+        fillItem(shoppingCart);
+        shoppingCart.setNumber(1);
+        shoppingCart.setCreateTime(LocalDateTime.now());
+        shoppingCartMapper.upsert(shoppingCart);
+    }
+
+    /**
+     * 批量添加购物车，按最新的名称、图片、单价加入，已停售或已删除的商品跳过
+     * 商品信息从商品快照中读取，购物车一次批量写入，往返次数和商品数量无关
+     * @param shoppingCartDTOList
+     */
+    public void addShoppingCartBatch(List<ShoppingCartDTO> shoppingCartDTOList) {
+        Long userId = BaseContext.getCurrentId();
+        CatalogSnapshot.Catalog catalog = catalogSnapshot.get();
+
+        LocalDateTime now = LocalDateTime.now();
+        List<ShoppingCart> shoppingCartList = new ArrayList<>();
+        for (ShoppingCartDTO dto : shoppingCartDTOList) {
+            ShoppingCart shoppingCart = new ShoppingCart();
+            BeanUtils.copyProperties(dto, shoppingCart);
+            if (dto.getDishId() != null) {
+                Dish dish = catalog.getDish(dto.getDishId());
+                if (!catalog.isDishOnSale(dto.getDishId())) {
+                    log.info("菜品已停售或已删除，不加入购物车，菜品ID：{}", dto.getDishId());
+                    continue;
+                }
                 shoppingCart.setName(dish.getName());
                 shoppingCart.setImage(dish.getImage());
                 shoppingCart.setAmount(dish.getPrice());
             } else {
-                //本次添加到购物车的是套餐
-                Setmeal setmeal = setmealMapper.getById(setmealId);
+                Setmeal setmeal = catalog.getSetmeal(dto.getSetmealId());
+                if (!catalog.isSetmealOnSale(dto.getSetmealId())) {
+                    log.info("套餐已停售或已删除，不加入购物车，套餐ID：{}", dto.getSetmealId());
+                    continue;
+                }
                 shoppingCart.setName(setmeal.getName());
                 shoppingCart.setImage(setmeal.getImage());
                 shoppingCart.setAmount(setmeal.getPrice());
             }
-            shoppingCart.setNumber(1);
-            shoppingCart.setCreateTime(LocalDateTime.now());
-            shoppingCartMapper.insert(shoppingCart);
+            shoppingCart.setUserId(userId);
+            shoppingCart.setNumber(dto.getNumber() == null || dto.getNumber() < 1 ? 1 : dto.getNumber());
+            shoppingCart.setCreateTime(now);
+            shoppingCartList.add(shoppingCart);
+        }
+        if (shoppingCartList.isEmpty()) {
+            return;
+        }
+
+        if (shoppingCartStore.isEnabled()) {
+            shoppingCartStore.addBatch(userId, shoppingCartList);
+        } else {
+            //已存在的商品由唯一索引合并为数量累加
+            shoppingCartMapper.insertBatch(shoppingCartList);
         }
     }
 
     /**
-     * 查看购物车
+     * 查看购物车，名称、图片、单价按商品快照中的最新信息展示
      * @return
      */
     public List<ShoppingCart> showShoppingCart() {
         Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = ShoppingCart.builder()
-                .userId(userId)
-                .build();
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
+        List<ShoppingCart> list;
+        if (shoppingCartStore.isEnabled()) {
+            list = shoppingCartStore.list(userId);
+        } else {
+            ShoppingCart shoppingCart = ShoppingCart.builder()
+                    .userId(userId)
+                    .build();
+            list = shoppingCartMapper.list(shoppingCart);
+        }
+
+        CatalogSnapshot.Catalog catalog = catalogSnapshot.get();
+        for (ShoppingCart cart : list) {
+            if (cart.getDishId() != null) {
+                Dish dish = catalog.getDish(cart.getDishId());
+                if (dish != null) {
+                    cart.setName(dish.getName());
+                    cart.setImage(dish.getImage());
+                    cart.setAmount(dish.getPrice());
+                }
+            } else {
+                Setmeal setmeal = catalog.getSetmeal(cart.getSetmealId());
+                if (setmeal != null) {
+                    cart.setName(setmeal.getName());
+                    cart.setImage(setmeal.getImage());
+                    cart.setAmount(setmeal.getPrice());
+                }
+            }
+        }
         return list;
     }
 
@@ -89,6 +152,10 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     public void cleanShoppingCart() {
         Long userId = BaseContext.getCurrentId();
+        if (shoppingCartStore.isEnabled()) {
+            shoppingCartStore.clear(userId);
+            return;
+        }
         shoppingCartMapper.deleteByUserId(userId);
     }
 
@@ -97,26 +164,64 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      * @param shoppingCartDTO
      */
     public void subShoppingCart(ShoppingCartDTO shoppingCartDTO) {
-        // 查询当前商品
         ShoppingCart shoppingCart = new ShoppingCart();
         BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
         Long userId = BaseContext.getCurrentId();
         shoppingCart.setUserId(userId);
 
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
+        if (shoppingCartStore.isEnabled()) {
+            shoppingCartStore.sub(shoppingCart);
+            return;
+        }
 
-        if (list != null && list.size() > 0) {
-            ShoppingCart cart = list.get(0);
-            Integer currentNumber = cart.getNumber();
-            
-            if (currentNumber > 1) {
-                // 如果数量大于1，则数量减1
-                cart.setNumber(currentNumber - 1);
-                shoppingCartMapper.updateNumberById(cart);
-            } else {
-                // 如果数量等于1，则删除该行记录
-                shoppingCartMapper.deleteById(cart.getId());
+        // 如果数量大于1，则数量减1
+        if (shoppingCartMapper.decrementNumber(shoppingCart) == 0) {
+            // 如果数量等于1，则删除该行记录
+            shoppingCartMapper.deleteLastOne(shoppingCart);
+        }
+    }
+
+    /**
+     * 用Redis中的购物车覆盖数据库中的购物车数据
+     * @param userId 用户ID
+     * @param shoppingCartList 购物车商品
+     */
+    @Transactional
+    public void saveSnapshot(Long userId, List<ShoppingCart> shoppingCartList) {
+        shoppingCartMapper.deleteByUserId(userId);
+        if (!shoppingCartList.isEmpty()) {
+            shoppingCartMapper.insertBatch(shoppingCartList);
+        }
+    }
+
+    /**
+     * 从商品快照中补全购物车商品的名称、图片、单价，已停售或已删除的商品不能加入购物车
+     * @param shoppingCart
+     */
+    private void fillItem(ShoppingCart shoppingCart) {
+        CatalogSnapshot.Catalog catalog = catalogSnapshot.get();
+        //判断本次添加到购物车的是菜品还是套餐
+        Long dishId = shoppingCart.getDishId();
+        Long setmealId = shoppingCart.getSetmealId();
+
+        if (dishId != null) {
+            //本次添加到购物车的是菜品
+            if (!catalog.isDishOnSale(dishId)) {
+                throw new ShoppingCartBusinessException(MessageConstant.DISH_NOT_ON_SALE);
+            }
+            Dish dish = catalog.getDish(dishId);
+            shoppingCart.setName(dish.getName());
+            shoppingCart.setImage(dish.getImage());
+            shoppingCart.setAmount(dish.getPrice());
+        } else {
+            //本次添加到购物车的是套餐
+            if (!catalog.isSetmealOnSale(setmealId)) {
+                throw new ShoppingCartBusinessException(MessageConstant.SETMEAL_NOT_ON_SALE);
             }
+            Setmeal setmeal = catalog.getSetmeal(setmealId);
+            shoppingCart.setName(setmeal.getName());
+            shoppingCart.setImage(setmeal.getImage());
+            shoppingCart.setAmount(setmeal.getPrice());
         }
     }
-}
\ No newline at end of file
+}
@@ -1,10 +1,12 @@
 package com.sky.service.impl;
 
+import com.sky.cache.OrderStatusCounter;
+import com.sky.entity.DailyBusinessStats;
 import com.sky.entity.Orders;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.SetmealMapper;
-import com.sky.mapper.UserMapper;
+import com.sky.service.DailyStatsService;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
@@ -14,6 +16,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.HashMap;
@@ -26,11 +29,13 @@ public class WorkspaceServiceImpl implements WorkspaceService {
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
-    private UserMapper userMapper;
+    private DailyStatsService dailyStatsService;
     @Autowired
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
 
     /**
      * 查询今日运营数据
@@ -53,28 +58,25 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      */
     @Override
     public BusinessDataVO getBusinessData(LocalDateTime beginTime, LocalDateTime endTime) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("begin", beginTime);
-        map.put("end", endTime);
-
-        // 查询营业额
-        Double turnover = orderMapper.sumByMap(map);
-        turnover = turnover == null ? 0.0 : turnover;
-
-        // 查询有效订单数
-        map.put("status", Orders.COMPLETED);
-        Integer validOrderCount = orderMapper.countByMap(map);
-        validOrderCount = validOrderCount == null ? 0 : validOrderCount;
-
-        // 查询订单总数
-        map.remove("status");
-        Integer totalOrderCount = orderMapper.countByMap(map);
-        totalOrderCount = totalOrderCount == null ? 0 : totalOrderCount;
+        // 按天汇总：已封存的日期读汇总表，今天等未封存的日期从原始表统计
+        Map<LocalDate, DailyBusinessStats> statsMap =
+                dailyStatsService.getDailyStats(beginTime.toLocalDate(), endTime.toLocalDate());
+
+        double turnover = 0.0;
+        int validOrderCount = 0;
+        int totalOrderCount = 0;
+        int newUsers = 0;
+        for (DailyBusinessStats stats : statsMap.values()) {
+            turnover += stats.getTurnover() == null ? 0.0 : stats.getTurnover().doubleValue();
+            validOrderCount += stats.getValidOrderCount() == null ? 0 : stats.getValidOrderCount();
+            totalOrderCount += stats.getOrderCount() == null ? 0 : stats.getOrderCount();
+            newUsers += stats.getNewUsers() == null ? 0 : stats.getNewUsers();
+        }
 
         // 计算订单完成率
         Double orderCompletionRate = 0.0;
         if (totalOrderCount != 0) {
-            orderCompletionRate = validOrderCount.doubleValue() / totalOrderCount.doubleValue();
+            orderCompletionRate = (double) validOrderCount / totalOrderCount;
         }
 
         // 计算平均客单价
@@ -83,10 +85,6 @@ public class WorkspaceServiceImpl implements WorkspaceService {
             unitPrice = turnover / validOrderCount;
         }
 
-        // 查询新增用户数
-        Integer newUsers = userMapper.countByMap(map);
-        newUsers = newUsers == null ? 0 : newUsers;
-
         return BusinessDataVO.builder()
                 .turnover(turnover)
                 .validOrderCount(validOrderCount)
@@ -102,32 +100,21 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      */
     @Override
     public OrderOverViewVO getOrderOverView() {
-        // 查询待接单数量（状态为2）
-        Integer waitingOrders = orderMapper.countByStatus(Orders.TO_BE_CONFIRMED);
-        waitingOrders = waitingOrders == null ? 0 : waitingOrders;
-
-        // 查询待派送数量（状态为3）
-        Integer deliveredOrders = orderMapper.countByStatus(Orders.CONFIRMED);
-        deliveredOrders = deliveredOrders == null ? 0 : deliveredOrders;
-
-        // 查询已完成数量（状态为5）
-        Integer completedOrders = orderMapper.countByStatus(Orders.COMPLETED);
-        completedOrders = completedOrders == null ? 0 : completedOrders;
+        // 从计数器中读取各状态订单数量，不再扫描orders表
+        Map<Integer, Long> statusCount = orderStatusCounter.snapshot();
 
-        // 查询已取消数量（状态为6）
-        Integer cancelledOrders = orderMapper.countByStatus(Orders.CANCELLED);
-        cancelledOrders = cancelledOrders == null ? 0 : cancelledOrders;
-
-        // 查询全部订单数量
-        Integer allOrders = orderMapper.countByMap(new HashMap<>());
-        allOrders = allOrders == null ? 0 : allOrders;
+        // 全部订单数量为各状态数量之和
+        long allOrders = 0;
+        for (Long count : statusCount.values()) {
+            allOrders += count;
+        }
 
         return OrderOverViewVO.builder()
-                .waitingOrders(waitingOrders)
-                .deliveredOrders(deliveredOrders)
-                .completedOrders(completedOrders)
-                .cancelledOrders(cancelledOrders)
-                .allOrders(allOrders)
+                .waitingOrders(OrderStatusCounter.count(statusCount, Orders.TO_BE_CONFIRMED)) // 待接单（状态为2）
+                .deliveredOrders(OrderStatusCounter.count(statusCount, Orders.CONFIRMED)) // 待派送（状态为3）
+                .completedOrders(OrderStatusCounter.count(statusCount, Orders.COMPLETED)) // 已完成（状态为5）
+                .cancelledOrders(OrderStatusCounter.count(statusCount, Orders.CANCELLED)) // 已取消（状态为6）
+                .allOrders((int) allOrders)
                 .build();
     }
 
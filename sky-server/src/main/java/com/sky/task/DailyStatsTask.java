@@ -0,0 +1,41 @@
+package com.sky.task;
+
+import com.sky.annotation.ClusterJob;
+import com.sky.service.DailyStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+@Component
+@Slf4j
+public class DailyStatsTask {
+
+    @Autowired
+    private DailyStatsService dailyStatsService;
+
+    /**
+     * 用原始表重新统计当天的运营数据汇总，建立增量更新的基线并纠正偏差
+     * 每5分钟触发一次
+     */
+    @Scheduled(cron = "0 0/5 * * * ?")
+    @ClusterJob(value = "stats:refresh", leaseMillis = 120000)
+    public void refreshToday() {
+        log.info("开始刷新当天运营数据汇总：{}", LocalDateTime.now());
+        dailyStatsService.refreshToday();
+    }
+
+    /**
+     * 封存已经过去的日期
+     * 每天凌晨1点30分触发一次（在OrderTask处理完派送中订单之后，避免封存后数据再发生变化）
+     */
+    @Scheduled(cron = "0 30 1 * * ?")
+    @ClusterJob(value = "stats:seal", leaseMillis = 600000)
+    public void sealPastDays() {
+        log.info("开始封存历史运营数据：{}", LocalDateTime.now());
+        int days = dailyStatsService.sealPastDays();
+        log.info("历史运营数据封存完成，共封存{}天", days);
+    }
+}
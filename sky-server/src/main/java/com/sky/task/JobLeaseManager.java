@@ -0,0 +1,211 @@
+package com.sky.task;
+
+import com.sky.properties.JobLeaseProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 定时任务租约管理
+ * 获取租约使用 SET key token NX PX，执行期间每隔租约时长的1/3续约一次，
+ * 执行结束后停止续约，按任务配置立即释放或保留到过期；续约和释放都会校验token，避免误操作其他节点的租约
+ */
+@Component
+@Slf4j
+public class JobLeaseManager {
+
+    /**
+     * 租约key的前缀，例如：job:lease:order:delivery
+     */
+    private static final String KEY_PREFIX = "job:lease:";
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private JobLeaseProperties jobLeaseProperties;
+
+    /**
+     * 本节点正在执行的任务，防止同一任务在本节点重叠执行
+     */
+    private final Set<String> runningJobs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 关闭Redis时使用的本机租约：任务名称 -> 到期时间
+     */
+    private final Map<String, Long> localLeases = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService renewExecutor;
+
+    @PostConstruct
+    public void init() {
+        renewExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "job-lease-renew");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        renewExecutor.shutdownNow();
+    }
+
+    /**
+     * 获取任务租约
+     * @param job 任务名称
+     * @param leaseMillis 租约时长（毫秒）
+     * @return 获取成功返回租约，否则返回null
+     */
+    public Lease tryAcquire(String job, long leaseMillis) {
+        if (!runningJobs.add(job)) {
+            log.info("任务{}上一次还没有执行完，跳过本次执行", job);
+            return null;
+        }
+
+        String token = nodeId + ":" + UUID.randomUUID();
+        boolean acquired;
+        try {
+            acquired = jobLeaseProperties.isRedisEnabled()
+                    ? Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                            .setIfAbsent(KEY_PREFIX + job, token, Duration.ofMillis(leaseMillis)))
+                    : acquireLocal(job, leaseMillis);
+        } catch (RuntimeException e) {
+            runningJobs.remove(job);
+            throw e;
+        }
+        if (!acquired) {
+            runningJobs.remove(job);
+            log.debug("任务{}的租约被其他节点持有，跳过本次执行", job);
+            return null;
+        }
+
+        Lease lease = new Lease(job, token, leaseMillis);
+        long period = Math.max(1, leaseMillis / 3);
+        lease.renewTask = renewExecutor.scheduleAtFixedRate(() -> renew(lease), period, period, TimeUnit.MILLISECONDS);
+        return lease;
+    }
+
+    /**
+     * 任务执行结束，停止续约
+     * @param lease
+     * @param release 是否立即释放租约，不释放时租约保留到过期，期间其他节点同一次触发的执行会被跳过
+     */
+    public void finish(Lease lease, boolean release) {
+        lease.renewTask.cancel(false);
+        if (!release) {
+            runningJobs.remove(lease.job);
+            return;
+        }
+        try {
+            if (jobLeaseProperties.isRedisEnabled()) {
+                stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(KEY_PREFIX + lease.job), lease.token);
+            } else {
+                localLeases.remove(lease.job);
+            }
+        } catch (RuntimeException e) {
+            // 释放失败时租约会自然过期
+            log.warn("任务{}的租约释放失败", lease.job, e);
+        } finally {
+            runningJobs.remove(lease.job);
+        }
+    }
+
+    private void renew(Lease lease) {
+        boolean renewed;
+        try {
+            if (jobLeaseProperties.isRedisEnabled()) {
+                Long result = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(KEY_PREFIX + lease.job),
+                        lease.token, String.valueOf(lease.leaseMillis));
+                renewed = result != null && result > 0;
+            } else {
+                localLeases.put(lease.job, System.currentTimeMillis() + lease.leaseMillis);
+                renewed = true;
+            }
+        } catch (RuntimeException e) {
+            log.warn("任务{}的租约续约异常", lease.job, e);
+            renewed = false;
+        }
+
+        if (renewed) {
+            lease.renewals.incrementAndGet();
+        } else {
+            lease.renewFailures.incrementAndGet();
+            log.warn("任务{}的租约续约失败，其他节点可能开始执行该任务", lease.job);
+        }
+    }
+
+    private boolean acquireLocal(String job, long leaseMillis) {
+        long now = System.currentTimeMillis();
+        boolean[] acquired = {false};
+        localLeases.compute(job, (key, expireAt) -> {
+            if (expireAt != null && expireAt > now) {
+                return expireAt;
+            }
+            acquired[0] = true;
+            return now + leaseMillis;
+        });
+        return acquired[0];
+    }
+
+    /**
+     * 一次任务执行持有的租约
+     */
+    public static class Lease {
+
+        private final String job;
+        private final String token;
+        private final long leaseMillis;
+        private final long acquiredAt = System.currentTimeMillis();
+        private final AtomicInteger renewals = new AtomicInteger();
+        private final AtomicInteger renewFailures = new AtomicInteger();
+        private volatile ScheduledFuture<?> renewTask;
+
+        private Lease(String job, String token, long leaseMillis) {
+            this.job = job;
+            this.token = token;
+            this.leaseMillis = leaseMillis;
+        }
+
+        public String getJob() {
+            return job;
+        }
+
+        public long getAcquiredAt() {
+            return acquiredAt;
+        }
+
+        public int getRenewals() {
+            return renewals.get();
+        }
+
+        public int getRenewFailures() {
+            return renewFailures.get();
+        }
+    }
+}
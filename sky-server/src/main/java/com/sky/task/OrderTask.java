@@ -1,14 +1,18 @@
 package com.sky.task;
 
+import com.sky.annotation.ClusterJob;
+import com.sky.cache.OrderStatusCounter;
 import com.sky.entity.Orders;
 import com.sky.mapper.OrderMapper;
+import com.sky.service.DailyStatsService;
+import com.sky.websocket.OrderNotifier;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @Component
@@ -17,67 +21,85 @@ public class OrderTask {
 
     @Autowired
     private OrderMapper orderMapper;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private OrderNotifier orderNotifier;
+    @Autowired
+    private DailyStatsService dailyStatsService;
 
     /**
-     * 处理超时订单
-     * 每分钟触发一次
+     * 每批处理的订单数
      */
-    @Scheduled(cron = "0 * * * * ?")
-    @Transactional
-    public void processTimeoutOrder() {
-        log.info("开始处理超时订单：{}", LocalDateTime.now());
-        
-        // 查询状态为待付款且下单时间在15分钟之前的订单
-        LocalDateTime time = LocalDateTime.now().minusMinutes(15);//当前时间-15分钟，计算出阈值时间，在此之前的都要被取消
-        List<Orders> timeoutOrders = orderMapper.getByStatusAndOrderTimeLT(Orders.PENDING_PAYMENT, time);//筛选出超时的订单
-
-        // 1.检查timeoutOrders这个集合对象本身是否存在2.检查集合内部是否有元素（不是 “空集合”）
-        if (timeoutOrders != null && !timeoutOrders.isEmpty()) {
-            for (Orders order : timeoutOrders) {
-                // 将订单状态修改为已取消，并记录取消原因和时间
-                Orders updateOrder = Orders.builder()
-                        .id(order.getId())
-                        .status(Orders.CANCELLED)
-                        .cancelReason("订单超时，自动取消")
-                        .cancelTime(LocalDateTime.now())
-                        .build();
-                
-                orderMapper.update(updateOrder);
-                log.info("超时订单已取消，订单ID：{}", order.getId());
-            }
-        }
-        
-        log.info("超时订单处理完成，共处理{}个订单", timeoutOrders != null ? timeoutOrders.size() : 0);
-    }
+    private static final int BATCH_SIZE = 500;
 
     /**
      * 处理一直派送中的订单
      * 每天凌晨1点触发一次
+     * 按订单ID分页读取，每批用一条update修改，每条语句单独提交，避免长事务长时间持有行锁
      */
     @Scheduled(cron = "0 0 1 * * ?")
-    @Transactional
+    @ClusterJob(value = "order:delivery", leaseMillis = 600000)
     public void processDeliveryOrder() {
         log.info("开始处理派送中的订单：{}", LocalDateTime.now());
-        
+        long start = System.currentTimeMillis();
+
         // 获取1小时前的时间点
         LocalDateTime time = LocalDateTime.now().minusMinutes(60);
-        
-        // 查询：状态为派送中且下单时间小于1小时前的订单
-        List<Orders> deliveryOrders = orderMapper.getByStatusAndOrderTimeLT(Orders.DELIVERY_IN_PROGRESS, time);
-        
-        if (deliveryOrders != null && !deliveryOrders.isEmpty()) {
+
+        // 将订单状态修改为已完成
+        Orders updateOrder = Orders.builder()
+                .status(Orders.COMPLETED)
+                .build();
+
+        int scanned = 0;
+        int updated = 0;
+        int batches = 0;
+        long lastId = 0;
+        while (true) {
+            // 查询：状态为派送中且下单时间小于1小时前的订单
+            List<Orders> deliveryOrders = orderMapper.listIdByStatusAndOrderTimeLT(
+                    Orders.DELIVERY_IN_PROGRESS, time, lastId, BATCH_SIZE);
+            if (deliveryOrders.isEmpty()) {
+                break;
+            }
+
+            List<Long> ids = new ArrayList<>(deliveryOrders.size());
             for (Orders order : deliveryOrders) {
-                // 将订单状态修改为已完成
-                Orders updateOrder = Orders.builder()
-                        .id(order.getId())
-                        .status(Orders.COMPLETED)
-                        .build();
-                
-                orderMapper.update(updateOrder);
-                log.info("派送中订单已完成，订单ID：{}，下单时间：{}", order.getId(), order.getOrderTime());
+                ids.add(order.getId());
+            }
+            int rows = orderMapper.updateStatusByIds(updateOrder, ids, Orders.DELIVERY_IN_PROGRESS);
+            orderStatusCounter.moved(Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED, rows);
+            // 部分订单在查询之后被修改了状态时，只处理这一批中确实已完成的订单
+            List<Orders> completedOrders = rows == ids.size()
+                    ? deliveryOrders : orderMapper.listIdByIdsAndStatus(ids, Orders.COMPLETED);
+            List<Long> completedIds = new ArrayList<>(completedOrders.size());
+            for (Orders order : completedOrders) {
+                completedIds.add(order.getId());
+            }
+            dailyStatsService.ordersCompleted(completedIds);
+            orderNotifier.statusChanged(completedOrders, Orders.COMPLETED);
+            updated += rows;
+            scanned += ids.size();
+            batches++;
+            lastId = ids.get(ids.size() - 1);
+
+            if (deliveryOrders.size() < BATCH_SIZE) {
+                break;
             }
         }
-        
-        log.info("派送中订单处理完成，共处理{}个订单", deliveryOrders != null ? deliveryOrders.size() : 0);
+
+        log.info("派送中订单处理完成，共查询{}个订单，完成{}个订单，分{}批，耗时{}ms",
+                scanned, updated, batches, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 各状态订单数量和数据库对账
+     * 每10分钟触发一次
+     */
+    @Scheduled(cron = "0 0/10 * * * ?")
+    @ClusterJob(value = "order:status_count", leaseMillis = 60000)
+    public void reconcileStatusCount() {
+        orderStatusCounter.reconcile();
     }
-}
\ No newline at end of file
+}
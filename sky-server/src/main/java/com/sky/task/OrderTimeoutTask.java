@@ -0,0 +1,216 @@
+package com.sky.task;
+
+import com.sky.annotation.ClusterJob;
+import com.sky.cache.OrderStatusCounter;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderTimeoutProperties;
+import com.sky.utils.TimingWheel;
+import com.sky.websocket.OrderNotifier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 待付款订单超时取消
+ * 下单时登记订单的超时时间点，到期后取消仍未付款的订单：
+ * 单机使用本机时间轮，集群部署时使用Redis的ZSET作为延时队列（score为到期时间戳），
+ * 各节点用ZREM抢占到期的订单，保证每个订单只被一个节点处理
+ */
+@Component
+@Slf4j
+public class OrderTimeoutTask {
+
+    /**
+     * Redis延时队列的key
+     */
+    private static final String DELAY_QUEUE_KEY = "order:payment_timeout";
+
+    /**
+     * 启动恢复时每批处理的订单数
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * 时间轮每层的格数
+     */
+    private static final int WHEEL_SIZE = 60;
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderTimeoutProperties orderTimeoutProperties;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private OrderNotifier orderNotifier;
+
+    private ExecutorService cancelExecutor;
+    private TimingWheel timingWheel;
+
+    @PostConstruct
+    public void init() {
+        cancelExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "order-timeout-cancel");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        if (!orderTimeoutProperties.isRedisEnabled()) {
+            // 每格1秒、每层60格，n层共覆盖 60^n 秒，按付款时限取刚好够用的层数（15分钟需要两层，覆盖3600秒）
+            long paymentSeconds = TimeUnit.MINUTES.toSeconds(orderTimeoutProperties.getPaymentMinutes());
+            int levels = 1;
+            for (long span = WHEEL_SIZE; span < paymentSeconds; span *= WHEEL_SIZE) {
+                levels++;
+            }
+            timingWheel = new TimingWheel(1000, WHEEL_SIZE, levels, cancelExecutor, "order-timeout-wheel");
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (timingWheel != null) {
+            timingWheel.stop();
+        }
+        cancelExecutor.shutdownNow();
+    }
+
+    /**
+     * 登记待付款订单的超时时间
+     * @param orderId 订单ID
+     * @param orderTime 下单时间
+     */
+    public void register(Long orderId, LocalDateTime orderTime) {
+        LocalDateTime deadline = orderTime.plusMinutes(orderTimeoutProperties.getPaymentMinutes());
+        long deadlineMillis = deadline.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (orderTimeoutProperties.isRedisEnabled()) {
+            stringRedisTemplate.opsForZSet().add(DELAY_QUEUE_KEY, String.valueOf(orderId), deadlineMillis);
+        } else {
+            timingWheel.schedule(deadlineMillis, () -> cancelTimeoutOrder(orderId));
+        }
+    }
+
+    /**
+     * 启动时从数据库恢复所有待付款订单的超时登记
+     * 按订单ID分页读取，已经超时的订单每批用一条update直接取消，其余的重新登记
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        long start = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expireBefore = now.minusMinutes(orderTimeoutProperties.getPaymentMinutes());
+
+        int registered = 0;
+        int cancelled = 0;
+        long lastId = 0;
+        while (true) {
+            List<Orders> pendingOrders = orderMapper.listIdByStatusAndOrderTimeLT(
+                    Orders.PENDING_PAYMENT, now, lastId, BATCH_SIZE);
+            if (pendingOrders.isEmpty()) {
+                break;
+            }
+
+            List<Orders> expiredOrders = new ArrayList<>();
+            List<Long> expiredIds = new ArrayList<>();
+            for (Orders order : pendingOrders) {
+                if (order.getOrderTime().isBefore(expireBefore)) {
+                    expiredOrders.add(order);
+                    expiredIds.add(order.getId());
+                } else {
+                    register(order.getId(), order.getOrderTime());
+                    registered++;
+                }
+            }
+            if (!expiredIds.isEmpty()) {
+                int rows = orderMapper.updateStatusByIds(timeoutCancelOrder(), expiredIds, Orders.PENDING_PAYMENT);
+                orderStatusCounter.moved(Orders.PENDING_PAYMENT, Orders.CANCELLED, rows);
+                // 部分订单在查询之后已付款或被取消时，只通知这一批中确实已取消的订单
+                orderNotifier.statusChanged(rows == expiredIds.size()
+                        ? expiredOrders : orderMapper.listIdByIdsAndStatus(expiredIds, Orders.CANCELLED), Orders.CANCELLED);
+                cancelled += rows;
+            }
+            lastId = pendingOrders.get(pendingOrders.size() - 1).getId();
+
+            if (pendingOrders.size() < BATCH_SIZE) {
+                break;
+            }
+        }
+        log.info("恢复待付款订单超时登记，登记{}个订单，取消已超时订单{}个，耗时{}ms",
+                registered, cancelled, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 从Redis延时队列中取出到期的订单并取消
+     * 每秒触发一次，仅在开启Redis延时队列时生效，同一时刻只有一个节点在取
+     */
+    @Scheduled(fixedDelay = 1000)
+    @ClusterJob(value = "order:payment_timeout", leaseMillis = 10000, releaseOnFinish = true)
+    public void pollRedisQueue() {
+        if (!orderTimeoutProperties.isRedisEnabled()) {
+            return;
+        }
+
+        Set<String> orderIds = stringRedisTemplate.opsForZSet().rangeByScore(DELAY_QUEUE_KEY,
+                0, System.currentTimeMillis(), 0, orderTimeoutProperties.getRedisBatchSize());
+        if (orderIds == null) {
+            return;
+        }
+        for (String orderId : orderIds) {
+            // 删除成功的节点才处理该订单
+            Long removed = stringRedisTemplate.opsForZSet().remove(DELAY_QUEUE_KEY, orderId);
+            if (removed != null && removed > 0) {
+                cancelTimeoutOrder(Long.valueOf(orderId));
+            }
+        }
+    }
+
+    /**
+     * 取消仍处于待付款状态的订单，已付款或已取消的订单不受影响
+     * @param orderId
+     */
+    private void cancelTimeoutOrder(Long orderId) {
+        try {
+            Orders orders = timeoutCancelOrder();
+            orders.setId(orderId);
+            if (orderMapper.updateStatus(orders, Collections.singletonList(Orders.PENDING_PAYMENT), false) > 0) {
+                orderStatusCounter.moved(Orders.PENDING_PAYMENT, Orders.CANCELLED, 1);
+                orderNotifier.statusChanged(orderId, null, Orders.CANCELLED);
+                log.info("超时订单已取消，订单ID：{}", orderId);
+            }
+        } catch (Exception e) {
+            log.error("取消超时订单失败，订单ID：{}", orderId, e);
+        }
+    }
+
+    /**
+     * 超时取消时需要写入的字段
+     * @return
+     */
+    private Orders timeoutCancelOrder() {
+        return Orders.builder()
+                .status(Orders.CANCELLED)
+                .cancelReason("订单超时，自动取消")
+                .cancelTime(LocalDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,24 @@
+package com.sky.task;
+
+import com.sky.service.ReportExportService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@Slf4j
+public class ReportExportTask {
+
+    @Autowired
+    private ReportExportService reportExportService;
+
+    /**
+     * 清理过期的异步导出文件
+     * 每10分钟触发一次
+     */
+    @Scheduled(cron = "0 0/10 * * * ?")
+    public void cleanExpiredJobs() {
+        reportExportService.cleanExpiredJobs();
+    }
+}
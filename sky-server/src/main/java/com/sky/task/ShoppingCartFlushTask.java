@@ -0,0 +1,72 @@
+package com.sky.task;
+
+import com.sky.annotation.ClusterJob;
+import com.sky.cache.ShoppingCartStore;
+import com.sky.entity.ShoppingCart;
+import com.sky.properties.ShoppingCartProperties;
+import com.sky.service.ShoppingCartService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Redis购物车写回数据库
+ * 取出有修改的用户，用Redis中的购物车覆盖shopping_cart表中该用户的数据；
+ * 同一时刻只有一个节点写回，避免两个节点先后写入不同时刻的购物车
+ */
+@Component
+@Slf4j
+public class ShoppingCartFlushTask {
+
+    @Autowired
+    private ShoppingCartStore shoppingCartStore;
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+    @Autowired
+    private ShoppingCartProperties shoppingCartProperties;
+
+    /**
+     * 每秒写回一次
+     */
+    @Scheduled(fixedDelay = 1000)
+    @ClusterJob(value = "cart:flush", releaseOnFinish = true)
+    public void flush() {
+        if (!shoppingCartStore.isEnabled()) {
+            return;
+        }
+        int flushed = 0;
+        while (true) {
+            List<Long> userIds = shoppingCartStore.popDirty();
+            List<Long> failedIds = new ArrayList<>();
+            for (Long userId : userIds) {
+                try {
+                    List<ShoppingCart> shoppingCartList = shoppingCartStore.snapshot(userId);
+                    if (shoppingCartList == null) {
+                        // Redis中的购物车已过期，以数据库为准
+                        continue;
+                    }
+                    shoppingCartService.saveSnapshot(userId, shoppingCartList);
+                    flushed++;
+                } catch (Exception e) {
+                    log.error("购物车写回数据库失败，用户ID：{}", userId, e);
+                    failedIds.add(userId);
+                }
+            }
+            if (!failedIds.isEmpty()) {
+                // 下次再写回，本次不再重试
+                shoppingCartStore.markDirty(failedIds);
+                break;
+            }
+            if (userIds.size() < shoppingCartProperties.getFlushBatchSize()) {
+                break;
+            }
+        }
+        if (flushed > 0) {
+            log.info("购物车写回数据库，用户数：{}", flushed);
+        }
+    }
+}
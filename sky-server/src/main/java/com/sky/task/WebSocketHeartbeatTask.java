@@ -0,0 +1,31 @@
+package com.sky.task;
+
+import com.sky.websocket.WebSocketDispatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * WebSocket心跳检查
+ * 每个节点检查自己持有的连接，不需要集群互斥
+ */
+@Component
+@Slf4j
+public class WebSocketHeartbeatTask {
+
+    @Autowired
+    private WebSocketDispatcher webSocketDispatcher;
+
+    /**
+     * 按心跳间隔检查连接，向空闲连接发送ping并回收没有回应的连接
+     */
+    @Scheduled(fixedDelayString = "${sky.websocket.heartbeat-interval-millis:30000}")
+    public void heartbeat() {
+        try {
+            webSocketDispatcher.heartbeat();
+        } catch (Exception e) {
+            log.error("WebSocket心跳检查失败", e);
+        }
+    }
+}
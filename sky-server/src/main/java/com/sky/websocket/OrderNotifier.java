@@ -0,0 +1,182 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单消息推送
+ * 来单提醒和催单只推送给商家端，订单状态变化只推送给下单用户自己的连接；
+ * 在事务中调用时等事务提交后再推送，避免推送了最终回滚的状态；
+ * 消息带有递增的序号并记录到重放缓冲区，经过合并后发送，同一订单的重复催单通过Redis去重
+ */
+@Component
+@Slf4j
+public class OrderNotifier {
+
+    /**
+     * 消息类型：来单提醒
+     */
+    public static final int TYPE_NEW_ORDER = 1;
+
+    /**
+     * 消息类型：客户催单
+     */
+    public static final int TYPE_REMINDER = 2;
+
+    /**
+     * 消息类型：订单状态变化
+     */
+    public static final int TYPE_STATUS_CHANGED = 3;
+
+    /**
+     * 订单状态 -> 状态说明
+     */
+    private static final Map<Integer, String> STATUS_TEXT = new HashMap<>();
+
+    static {
+        STATUS_TEXT.put(Orders.PENDING_PAYMENT, "待付款");
+        STATUS_TEXT.put(Orders.TO_BE_CONFIRMED, "待接单");
+        STATUS_TEXT.put(Orders.CONFIRMED, "已接单");
+        STATUS_TEXT.put(Orders.DELIVERY_IN_PROGRESS, "派送中");
+        STATUS_TEXT.put(Orders.COMPLETED, "已完成");
+        STATUS_TEXT.put(Orders.CANCELLED, "已取消");
+    }
+
+    /**
+     * 催单去重key前缀
+     */
+    private static final String REMINDER_KEY_PREFIX = "order:reminder:";
+
+    @Autowired
+    private WebSocketCoalescer webSocketCoalescer;
+    @Autowired
+    private WebSocketReplayBuffer webSocketReplayBuffer;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    /**
+     * 来单提醒
+     * @param orderId 订单ID
+     * @param number 订单号
+     */
+    public void newOrder(Long orderId, String number) {
+        emit(WebSocketDispatcher.SHOP_CHANNEL, message(TYPE_NEW_ORDER, orderId, "订单号：" + number));
+    }
+
+    /**
+     * 客户催单，同一订单在去重时间内只推送一次
+     * @param orderId 订单ID
+     * @param number 订单号
+     * @return 是否推送，重复催单时返回false
+     */
+    public boolean reminder(Long orderId, String number) {
+        if (!acquireReminder(orderId)) {
+            return false;
+        }
+        emit(WebSocketDispatcher.SHOP_CHANNEL, message(TYPE_REMINDER, orderId, "订单号：" + number));
+        return true;
+    }
+
+    /**
+     * 订单状态变化，推送给下单用户
+     * @param orderId 订单ID
+     * @param userId 下单用户ID，为空时根据订单查询
+     * @param status 新状态
+     */
+    public void statusChanged(Long orderId, Long userId, Integer status) {
+        Long targetUserId = userId != null ? userId : orderMapper.getUserIdById(orderId);
+        if (targetUserId == null) {
+            return;
+        }
+        Map<String, Object> map = new HashMap<>();
+        map.put("type", TYPE_STATUS_CHANGED);
+        map.put("orderId", orderId);
+        map.put("status", status);
+        map.put("content", STATUS_TEXT.getOrDefault(status, ""));
+        emit(WebSocketDispatcher.userChannel(targetUserId), map);
+    }
+
+    /**
+     * 批量修改订单状态后，逐个推送给下单用户
+     * @param orders 订单ID及下单用户ID
+     * @param status 新状态
+     */
+    public void statusChanged(List<Orders> orders, Integer status) {
+        for (Orders order : orders) {
+            statusChanged(order.getId(), order.getUserId(), status);
+        }
+    }
+
+    /**
+     * 通过SET NX EX占用催单去重标记，Redis不可用时不去重
+     * @param orderId
+     * @return
+     */
+    private boolean acquireReminder(Long orderId) {
+        long seconds = webSocketProperties.getReminderDedupSeconds();
+        if (seconds <= 0) {
+            return true;
+        }
+        try {
+            Boolean acquired = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(REMINDER_KEY_PREFIX + orderId, "1", Duration.ofSeconds(seconds));
+            return !Boolean.FALSE.equals(acquired);
+        } catch (RuntimeException e) {
+            log.warn("催单去重失败，订单ID：{}", orderId, e);
+            return true;
+        }
+    }
+
+    private Map<String, Object> message(int type, Long orderId, String content) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("type", type);
+        map.put("orderId", orderId);
+        map.put("content", content);
+        return map;
+    }
+
+    /**
+     * 事务提交后分配序号、记录到重放缓冲区并发送，序号在发送前分配，保证发送顺序和序号一致
+     * @param channel 频道
+     * @param map 消息内容
+     */
+    private void emit(String channel, Map<String, Object> map) {
+        afterCommit(() -> {
+            long seq = webSocketReplayBuffer.nextSeq();
+            map.put("seq", seq);
+            String json = JSON.toJSONString(map);
+            webSocketReplayBuffer.record(channel, seq, json);
+            webSocketCoalescer.submit(channel, json);
+        });
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.sky.websocket;
+
+import com.sky.constant.JwtClaimsConstant;
+import com.sky.properties.JwtProperties;
+import com.sky.properties.WebSocketProperties;
+import com.sky.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.websocket.Extension;
+import javax.websocket.HandshakeResponse;
+import javax.websocket.server.HandshakeRequest;
+import javax.websocket.server.ServerEndpointConfig;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WebSocket握手鉴权
+ * 从握手请求的参数或请求头中读取jwt令牌（浏览器建立WebSocket连接时无法设置请求头，一般放在参数中），
+ * 解析出连接的角色和所属用户，保存到会话属性中，供建立连接时订阅对应的频道；
+ * 只有完全没有携带令牌时才按配置兼容为商家端，携带的令牌校验失败时不设置角色；
+ * 同时根据配置决定是否允许协商permessage-deflate压缩
+ */
+@Component
+@Slf4j
+public class WebSocketAuthConfigurator extends ServerEndpointConfig.Configurator {
+
+    /**
+     * 会话属性：连接角色
+     */
+    public static final String ROLE = "role";
+
+    /**
+     * 会话属性：用户端连接的用户ID
+     */
+    public static final String USER_ID = "userId";
+
+    /**
+     * 角色：商家端（管理端员工）
+     */
+    public static final String ROLE_SHOP = "shop";
+
+    /**
+     * 角色：用户端
+     */
+    public static final String ROLE_USER = "user";
+
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    /**
+     * 握手时由WebSocket容器创建对象（不经过Spring注入），所以通过静态字段共享
+     */
+    private static JwtProperties jwtProperties;
+    private static WebSocketProperties webSocketProperties;
+
+    @Autowired
+    public void setJwtProperties(JwtProperties jwtProperties) {
+        WebSocketAuthConfigurator.jwtProperties = jwtProperties;
+    }
+
+    @Autowired
+    public void setWebSocketProperties(WebSocketProperties webSocketProperties) {
+        WebSocketAuthConfigurator.webSocketProperties = webSocketProperties;
+    }
+
+    @Override
+    public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request, HandshakeResponse response) {
+        Map<String, Object> userProperties = sec.getUserProperties();
+
+        String adminToken = getToken(request, jwtProperties.getAdminTokenName());
+        String userToken = getToken(request, jwtProperties.getUserTokenName());
+        if (adminToken == null && userToken == null) {
+            if (!webSocketProperties.isRequireToken()) {
+                // 兼容未携带令牌的商家端页面
+                userProperties.put(ROLE, ROLE_SHOP);
+            }
+            return;
+        }
+
+        if (adminToken != null) {
+            try {
+                JwtUtil.parseJWT(jwtProperties.getAdminSecretKey(), adminToken);
+                userProperties.put(ROLE, ROLE_SHOP);
+                return;
+            } catch (Exception e) {
+                log.warn("WebSocket握手管理端令牌校验失败：{}", e.getMessage());
+            }
+        }
+
+        if (userToken != null) {
+            try {
+                Claims claims = JwtUtil.parseJWT(jwtProperties.getUserSecretKey(), userToken);
+                userProperties.put(ROLE, ROLE_USER);
+                userProperties.put(USER_ID, Long.valueOf(claims.get(JwtClaimsConstant.USER_ID).toString()));
+                return;
+            } catch (Exception e) {
+                log.warn("WebSocket握手用户端令牌校验失败：{}", e.getMessage());
+            }
+        }
+        // 携带了令牌但校验失败（伪造或已过期），不设置角色，建立连接时拒绝
+    }
+
+    @Override
+    public List<Extension> getNegotiatedExtensions(List<Extension> installed, List<Extension> requested) {
+        if (webSocketProperties.isCompressionEnabled()) {
+            return super.getNegotiatedExtensions(installed, requested);
+        }
+        List<Extension> negotiated = new ArrayList<>();
+        for (Extension extension : super.getNegotiatedExtensions(installed, requested)) {
+            if (!PERMESSAGE_DEFLATE.equals(extension.getName())) {
+                negotiated.add(extension);
+            }
+        }
+        return negotiated;
+    }
+
+    /**
+     * 优先从请求参数中读取令牌，其次从请求头中读取
+     * @param request
+     * @param name
+     * @return
+     */
+    private String getToken(HandshakeRequest request, String name) {
+        List<String> values = request.getParameterMap().get(name);
+        if (values == null || values.isEmpty()) {
+            values = request.getHeaders().get(name);
+        }
+        if (values == null || values.isEmpty() || values.get(0).isEmpty()) {
+            return null;
+        }
+        return values.get(0);
+    }
+}
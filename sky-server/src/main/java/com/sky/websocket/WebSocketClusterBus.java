@@ -0,0 +1,118 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * WebSocket集群消息总线
+ * 客户端可能连接在任意一个节点上，消息先投递给本节点的连接，再通过Redis发布订阅转发给其他节点，
+ * 其他节点收到后投递给各自持有的连接；消息中带有发出节点的标识，节点忽略自己发出的消息
+ */
+@Component
+@Slf4j
+public class WebSocketClusterBus implements MessageListener {
+
+    /**
+     * WebSocket消息转发的频道
+     */
+    public static final String CHANNEL = "ws_cluster_message";
+
+    /**
+     * 当前节点标识
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    private WebSocketDispatcher webSocketDispatcher;
+    @Autowired
+    private WebSocketReplayBuffer webSocketReplayBuffer;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    /**
+     * 向所有节点上的所有客户端群发消息
+     * @param message 消息内容
+     */
+    public void broadcast(String message) {
+        webSocketDispatcher.broadcast(message);
+        forward(null, null, message);
+    }
+
+    /**
+     * 向所有节点上订阅了指定频道的客户端发送消息
+     * @param channel 频道
+     * @param message 消息内容
+     */
+    public void publish(String channel, String message) {
+        webSocketDispatcher.publish(channel, message);
+        forward(null, channel, message);
+    }
+
+    /**
+     * 向指定客户端发送消息，不在本节点时转发给其他节点
+     * @param sid 客户端标识
+     * @param message 消息内容
+     * @return 客户端是否连接在本节点
+     */
+    public boolean send(String sid, String message) {
+        if (webSocketDispatcher.send(sid, message)) {
+            return true;
+        }
+        forward(sid, null, message);
+        return false;
+    }
+
+    /**
+     * 收到其他节点转发的消息，投递给本节点的连接
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        JSONObject body = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (nodeId.equals(body.getString("nodeId"))) {
+            // 本节点发出的消息，已经投递过了
+            return;
+        }
+        String sid = body.getString("sid");
+        String channel = body.getString("channel");
+        String content = body.getString("message");
+        if (sid != null) {
+            webSocketDispatcher.send(sid, content);
+        } else if (channel != null) {
+            webSocketReplayBuffer.recordFrame(channel, content);
+            webSocketDispatcher.publish(channel, content);
+        } else {
+            webSocketDispatcher.broadcast(content);
+        }
+    }
+
+    private void forward(String sid, String channel, String message) {
+        if (!webSocketProperties.isClusterEnabled()) {
+            return;
+        }
+        JSONObject body = new JSONObject();
+        body.put("nodeId", nodeId);
+        body.put("sid", sid);
+        body.put("channel", channel);
+        body.put("message", message);
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, body.toJSONString());
+        } catch (RuntimeException e) {
+            // 转发失败不影响本节点的投递
+            log.warn("WebSocket消息转发到其他节点失败", e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket消息合并
+ * 同一频道在一个时间窗口内的多条消息合并成一个JSON数组帧发送，高峰期大量来单提醒不再逐条推送；
+ * 窗口内只有一条消息时仍按原格式（JSON对象）发送
+ */
+@Component
+@Slf4j
+public class WebSocketCoalescer {
+
+    @Autowired
+    private WebSocketServer webSocketServer;
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    /**
+     * 频道 -> 当前窗口
+     */
+    private final Map<String, Window> pending = new HashMap<>();
+
+    private ScheduledExecutorService flushExecutor;
+
+    @PostConstruct
+    public void init() {
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        Map<String, Window> windows;
+        synchronized (pending) {
+            windows = new HashMap<>(pending);
+            pending.clear();
+        }
+        windows.forEach((channel, window) -> {
+            window.timer.cancel(false);
+            send(channel, window.messages);
+        });
+        flushExecutor.shutdownNow();
+    }
+
+    /**
+     * 提交消息，窗口结束或积攒到上限时发送
+     * 发送都在合并线程中进行，不占用提交消息的线程（通常是刚提交完事务的请求线程）
+     * @param channel 频道
+     * @param message 消息内容（JSON对象）
+     */
+    public void submit(String channel, String message) {
+        long windowMillis = webSocketProperties.getCoalesceWindowMillis();
+        if (windowMillis <= 0) {
+            webSocketServer.sendToChannel(channel, message);
+            return;
+        }
+
+        Window full = null;
+        synchronized (pending) {
+            Window window = pending.get(channel);
+            if (window == null) {
+                Window created = new Window();
+                created.timer = flushExecutor.schedule(() -> flush(channel, created), windowMillis, TimeUnit.MILLISECONDS);
+                pending.put(channel, created);
+                window = created;
+            }
+            window.messages.add(message);
+            if (window.messages.size() >= webSocketProperties.getCoalesceMaxBatch()) {
+                // 积攒到上限提前发送：取消这个窗口的定时发送，之后的消息开启新的窗口
+                pending.remove(channel);
+                window.timer.cancel(false);
+                full = window;
+            }
+        }
+        if (full != null) {
+            List<String> messages = full.messages;
+            flushExecutor.execute(() -> send(channel, messages));
+        }
+    }
+
+    /**
+     * 窗口结束，发送窗口中积攒的消息
+     * @param channel 频道
+     * @param window 到期的窗口
+     */
+    private void flush(String channel, Window window) {
+        synchronized (pending) {
+            if (!pending.remove(channel, window)) {
+                // 已经因为积攒到上限提前发送
+                return;
+            }
+        }
+        send(channel, window.messages);
+    }
+
+    private void send(String channel, List<String> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        try {
+            String frame = messages.size() == 1 ? messages.get(0) : "[" + String.join(",", messages) + "]";
+            webSocketServer.sendToChannel(channel, frame);
+        } catch (Exception e) {
+            log.error("WebSocket合并消息发送失败，频道：{}，消息数：{}", channel, messages.size(), e);
+        }
+    }
+
+    /**
+     * 一个频道的合并窗口
+     */
+    private static class Window {
+
+        private final List<String> messages = new ArrayList<>();
+
+        /**
+         * 窗口结束时的定时发送
+         */
+        private ScheduledFuture<?> timer;
+    }
+}
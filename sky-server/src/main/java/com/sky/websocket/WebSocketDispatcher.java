@@ -0,0 +1,451 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import com.sky.vo.WebSocketStatsVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSocket消息分发
+ * 每个连接有一个有界的消息队列，业务线程只负责入队，由发送线程通过异步方式逐条发送，
+ * 一个连接同一时刻只有一条消息在发送；队列满时按配置丢弃最早的消息或断开连接。
+ * 连接按频道建立索引（商家端订阅shop，用户端订阅user:用户ID），消息只投递给订阅了对应频道的连接。
+ * 定时向空闲连接发送ping，连续多次收不到pong或任何消息的连接视为已断开并回收；
+ * 连接数达到上限时优先回收空闲连接，没有可回收的连接时拒绝新连接
+ */
+@Component
+@Slf4j
+public class WebSocketDispatcher {
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    /**
+     * 商家端频道
+     */
+    public static final String SHOP_CHANNEL = "shop";
+
+    /**
+     * 所有连接的发送器，key: sid
+     */
+    private final ConcurrentMap<String, SessionSender> senderMap = new ConcurrentHashMap<>();
+
+    /**
+     * 频道 -> 订阅该频道的sid
+     */
+    private final ConcurrentMap<String, Set<String>> channelMap = new ConcurrentHashMap<>();
+
+    private ExecutorService sendExecutor;
+
+    /**
+     * 发送ping和关闭连接的线程池：容器发送ping是同步写，遇到半开连接会阻塞到TCP超时，不能占用消息发送线程
+     */
+    private ExecutorService heartbeatExecutor;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    private final LongAdder sendNanos = new LongAdder();
+    private final AtomicLong maxSendNanos = new AtomicLong();
+    private final LongAdder reaped = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        sendExecutor = Executors.newFixedThreadPool(Math.max(1, webSocketProperties.getSenderThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "ws-sender-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger heartbeatIndex = new AtomicInteger();
+        heartbeatExecutor = Executors.newFixedThreadPool(Math.max(1, webSocketProperties.getHeartbeatThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "ws-heartbeat-" + heartbeatIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        sendExecutor.shutdownNow();
+        heartbeatExecutor.shutdownNow();
+    }
+
+    /**
+     * 用户端频道名称
+     * @param userId 用户ID
+     * @return
+     */
+    public static String userChannel(Long userId) {
+        return "user:" + userId;
+    }
+
+    /**
+     * 登记新连接，同一sid的旧连接会被替换
+     * @param sid 客户端标识
+     * @param session 客户端会话
+     * @param channels 连接订阅的频道
+     * @return 是否登记成功，连接数达到上限且没有可回收的空闲连接时返回false
+     */
+    public boolean register(String sid, Session session, Collection<String> channels) {
+        if (senderMap.size() >= webSocketProperties.getMaxSessions() && !senderMap.containsKey(sid) && !shedIdle()) {
+            rejected.increment();
+            return false;
+        }
+        session.getAsyncRemote().setSendTimeout(webSocketProperties.getSendTimeoutMillis());
+        SessionSender old = senderMap.put(sid, new SessionSender(sid, session, webSocketProperties.getQueueCapacity(), channels));
+        if (old != null) {
+            unsubscribe(sid, old.channels);
+        }
+        for (String channel : channels) {
+            channelMap.computeIfAbsent(channel, key -> ConcurrentHashMap.newKeySet()).add(sid);
+        }
+        return true;
+    }
+
+    /**
+     * 收到客户端的pong或消息，刷新最后活跃时间
+     * @param sid 客户端标识
+     * @param session 客户端会话
+     */
+    public void touch(String sid, Session session) {
+        SessionSender sender = senderMap.get(sid);
+        if (sender != null && sender.session == session) {
+            sender.lastSeenMillis = System.currentTimeMillis();
+            sender.missedPongs.set(0);
+        }
+    }
+
+    /**
+     * 心跳检查：超过心跳间隔没有活跃的连接发送ping，连续多次没有回应的连接回收
+     */
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        long interval = webSocketProperties.getHeartbeatIntervalMillis();
+        for (SessionSender sender : senderMap.values()) {
+            if (!sender.session.isOpen()) {
+                reap(sender, "连接已关闭");
+            } else if (now - sender.lastSeenMillis >= interval) {
+                if (sender.missedPongs.get() >= webSocketProperties.getMaxMissedPongs()) {
+                    reap(sender, "心跳超时");
+                } else {
+                    sender.missedPongs.incrementAndGet();
+                    // 上一次ping还阻塞着时不再排队，同样记为一次没有回应
+                    if (sender.pinging.compareAndSet(false, true)) {
+                        heartbeatExecutor.execute(sender::ping);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 移除连接，只移除同一个会话，避免误删重连后的新连接
+     * @param sid 客户端标识
+     * @param session 客户端会话
+     */
+    public void unregister(String sid, Session session) {
+        SessionSender sender = senderMap.get(sid);
+        if (sender != null && sender.session == session && senderMap.remove(sid, sender)) {
+            unsubscribe(sid, sender.channels);
+        }
+    }
+
+    /**
+     * 向指定客户端发送消息
+     * @param sid 客户端标识
+     * @param message 消息内容
+     * @return 客户端是否在线
+     */
+    public boolean send(String sid, String message) {
+        SessionSender sender = senderMap.get(sid);
+        if (sender == null || !sender.session.isOpen()) {
+            return false;
+        }
+        sender.offer(message);
+        return true;
+    }
+
+    /**
+     * 向订阅了指定频道的客户端发送消息
+     * @param channel 频道
+     * @param message 消息内容
+     */
+    public void publish(String channel, String message) {
+        Set<String> sids = channelMap.get(channel);
+        if (sids == null) {
+            return;
+        }
+        for (String sid : sids) {
+            SessionSender sender = senderMap.get(sid);
+            if (sender != null && sender.session.isOpen()) {
+                sender.offer(message);
+            }
+        }
+    }
+
+    /**
+     * 向所有客户端群发消息
+     * @param message 消息内容
+     */
+    public void broadcast(String message) {
+        for (SessionSender sender : senderMap.values()) {
+            if (sender.session.isOpen()) {
+                sender.offer(message);
+            }
+        }
+    }
+
+    /**
+     * 当前连接数
+     * @return
+     */
+    public int getConnectionCount() {
+        return senderMap.size();
+    }
+
+    /**
+     * 检查指定客户端是否连接
+     * @param sid 客户端标识
+     * @return
+     */
+    public boolean isConnected(String sid) {
+        SessionSender sender = senderMap.get(sid);
+        return sender != null && sender.session.isOpen();
+    }
+
+    /**
+     * 推送统计
+     * @return
+     */
+    public WebSocketStatsVO stats() {
+        int queued = 0;
+        int maxDepth = 0;
+        for (SessionSender sender : senderMap.values()) {
+            int depth = sender.queue.size();
+            queued += depth;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        int idle = 0;
+        for (SessionSender sender : senderMap.values()) {
+            if (sender.missedPongs.get() > 0) {
+                idle++;
+            }
+        }
+        long sentCount = sent.sum();
+        long failedCount = failed.sum();
+        long total = sentCount + failedCount;
+        return WebSocketStatsVO.builder()
+                .connections(senderMap.size())
+                .liveSessions(senderMap.size() - idle)
+                .idleSessions(idle)
+                .reaped(reaped.sum())
+                .rejected(rejected.sum())
+                .queuedMessages(queued)
+                .maxQueueDepth(maxDepth)
+                .sent(sentCount)
+                .failed(failedCount)
+                .dropped(dropped.sum())
+                .disconnected(disconnected.sum())
+                .avgSendMillis(total == 0 ? 0.0 : sendNanos.sum() / 1e6 / total)
+                .maxSendMillis(maxSendNanos.get() / 1e6)
+                .build();
+    }
+
+    /**
+     * 连接数达到上限时回收一个最久没有回应心跳的连接
+     * @return 是否回收了连接
+     */
+    private boolean shedIdle() {
+        SessionSender idlest = null;
+        for (SessionSender sender : senderMap.values()) {
+            if (sender.missedPongs.get() > 0 && (idlest == null || sender.lastSeenMillis < idlest.lastSeenMillis)) {
+                idlest = sender;
+            }
+        }
+        return idlest != null && reap(idlest, "连接数达到上限");
+    }
+
+    /**
+     * 回收连接
+     * @param sender
+     * @param reason
+     * @return 是否由本次调用回收
+     */
+    private boolean reap(SessionSender sender, String reason) {
+        if (!detach(sender, new CloseReason(CloseReason.CloseCodes.GOING_AWAY, reason))) {
+            return false;
+        }
+        reaped.increment();
+        log.info("回收WebSocket连接，sid：{}，原因：{}", sender.sid, reason);
+        return true;
+    }
+
+    /**
+     * 移出索引并在心跳线程中关闭会话，半开连接关闭时可能阻塞，不能占用调用线程
+     * @param sender
+     * @param closeReason
+     * @return 是否由本次调用移出
+     */
+    private boolean detach(SessionSender sender, CloseReason closeReason) {
+        if (!senderMap.remove(sender.sid, sender)) {
+            return false;
+        }
+        unsubscribe(sender.sid, sender.channels);
+        sender.queue.clear();
+        heartbeatExecutor.execute(() -> {
+            try {
+                sender.session.close(closeReason);
+            } catch (IOException | RuntimeException e) {
+                log.debug("关闭客户端{}连接失败：{}", sender.sid, e.getMessage());
+            }
+        });
+        return true;
+    }
+
+    private void unsubscribe(String sid, Collection<String> channels) {
+        for (String channel : channels) {
+            channelMap.computeIfPresent(channel, (key, sids) -> {
+                sids.remove(sid);
+                return sids.isEmpty() ? null : sids;
+            });
+        }
+    }
+
+    private void recordSend(long nanos, boolean ok) {
+        if (ok) {
+            sent.increment();
+        } else {
+            failed.increment();
+        }
+        sendNanos.add(nanos);
+        maxSendNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * 单个连接的发送队列
+     */
+    private class SessionSender {
+
+        private final String sid;
+        private final Session session;
+        private final BlockingQueue<String> queue;
+        private final Collection<String> channels;
+
+        /**
+         * 是否有消息正在发送
+         */
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        /**
+         * 最后一次收到客户端pong或消息的时间
+         */
+        private volatile long lastSeenMillis = System.currentTimeMillis();
+
+        /**
+         * 连续没有回应的心跳次数
+         */
+        private final AtomicInteger missedPongs = new AtomicInteger();
+
+        /**
+         * 是否有ping正在发送，一个连接同一时刻最多占用一个心跳线程
+         */
+        private final AtomicBoolean pinging = new AtomicBoolean();
+
+        private SessionSender(String sid, Session session, int capacity, Collection<String> channels) {
+            this.sid = sid;
+            this.session = session;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+            this.channels = channels;
+        }
+
+        private void offer(String message) {
+            while (!queue.offer(message)) {
+                if (WebSocketProperties.POLICY_DISCONNECT.equals(webSocketProperties.getSlowConsumerPolicy())) {
+                    disconnect();
+                    return;
+                }
+                // 丢弃最早的一条再重试
+                if (queue.poll() != null) {
+                    dropped.increment();
+                }
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (sending.compareAndSet(false, true)) {
+                sendExecutor.execute(this::sendNext);
+            }
+        }
+
+        private void sendNext() {
+            String message = queue.poll();
+            if (message == null || !session.isOpen()) {
+                sending.set(false);
+                // 释放标记后可能又有新消息入队
+                if (!queue.isEmpty() && session.isOpen()) {
+                    schedule();
+                }
+                return;
+            }
+
+            long start = System.nanoTime();
+            try {
+                session.getAsyncRemote().sendText(message, result -> {
+                    recordSend(System.nanoTime() - start, result.isOK());
+                    if (!result.isOK()) {
+                        log.warn("向客户端{}发送消息失败：{}", sid, result.getException().getMessage());
+                    }
+                    sendExecutor.execute(this::sendNext);
+                });
+            } catch (RuntimeException e) {
+                recordSend(System.nanoTime() - start, false);
+                log.warn("向客户端{}发送消息失败：{}", sid, e.getMessage());
+                sendExecutor.execute(this::sendNext);
+            }
+        }
+
+        private void ping() {
+            try {
+                session.getAsyncRemote().sendPing(ByteBuffer.allocate(0));
+            } catch (IOException | RuntimeException e) {
+                log.debug("向客户端{}发送ping失败：{}", sid, e.getMessage());
+            } finally {
+                pinging.set(false);
+            }
+        }
+
+        /**
+         * 在推送消息的线程中调用，只移出索引，关闭会话交给心跳线程
+         */
+        private void disconnect() {
+            if (detach(this, new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "消息积压"))) {
+                disconnected.increment();
+                log.warn("客户端{}消息积压超过{}条，断开连接", sid, webSocketProperties.getQueueCapacity());
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.properties.SnowflakeProperties;
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket消息重放
+ * 每条推送的消息带有单调递增的序号(seq)，序号以时钟为下限（毫秒数左移12位），节点重启后不会从头开始；
+ * 每个频道在内存中保留最近的若干条消息，
+ * 客户端重连时携带最后收到的序号(/ws/{sid}?lastSeq=N)，服务端补发断线期间错过的消息；
+ * 开启后消息同时写入Redis Stream，连接到其他节点或节点重启后也能补发
+ */
+@Component
+@Slf4j
+public class WebSocketReplayBuffer {
+
+    /**
+     * 集群消息序号key
+     */
+    private static final String SEQ_KEY = "ws:event_seq";
+
+    /**
+     * 频道消息Stream的key前缀
+     */
+    private static final String STREAM_KEY_PREFIX = "ws:events:";
+
+    /**
+     * 序号时间部分的起始时间 2024-01-01 00:00:00 UTC，序号保持在2^53以内，Lua脚本中按数字比较不丢精度
+     */
+    private static final long EPOCH = 1704067200000L;
+
+    /**
+     * 序号中毫秒内的位数
+     */
+    private static final int MILLIS_SHIFT = 12;
+
+    /**
+     * 本地分配序号时按节点ID取模分槽，不同节点分配的序号不会重复
+     */
+    private static final int NODE_SLOTS = 1024;
+
+    /**
+     * 集群序号自增，结果小于下限（当前时间或本节点已知的最大序号）时直接跳到下限，
+     * Redis数据丢失或本节点使用过本地序号后，集群序号也不会回退
+     */
+    private static final DefaultRedisScript<Long> NEXT_SEQ_SCRIPT = new DefaultRedisScript<>(
+            "local seq = redis.call('incr', KEYS[1]) "
+                    + "local floor = tonumber(ARGV[1]) "
+                    + "if seq < floor then redis.call('set', KEYS[1], ARGV[1]) seq = floor end "
+                    + "return seq",
+            Long.class);
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private SnowflakeProperties snowflakeProperties;
+
+    /**
+     * 本节点已知的最大序号，集群序号不可用时在此基础上递增
+     */
+    private final AtomicLong localSeq = new AtomicLong();
+
+    /**
+     * 频道 -> 最近的消息
+     */
+    private Cache<String, Ring> ringCache;
+
+    private ExecutorService streamExecutor;
+
+    @PostConstruct
+    public void init() {
+        ringCache = Caffeine.newBuilder()
+                .maximumSize(webSocketProperties.getReplayMaxChannels())
+                .expireAfterAccess(webSocketProperties.getReplayExpireMinutes(), TimeUnit.MINUTES)
+                .build();
+        streamExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(10000),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ws-replay-stream");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.DiscardOldestPolicy());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        streamExecutor.shutdown();
+    }
+
+    /**
+     * 分配下一个消息序号
+     * 集群模式下通过Redis分配，保证各节点发出的消息序号全局递增；Redis不可用时退回本地分配
+     * @return
+     */
+    public long nextSeq() {
+        if (webSocketProperties.isClusterEnabled()) {
+            try {
+                long floor = Math.max(clockSeq(), localSeq.get() + 1);
+                Long seq = stringRedisTemplate.execute(NEXT_SEQ_SCRIPT, Collections.singletonList(SEQ_KEY),
+                        String.valueOf(floor));
+                if (seq != null) {
+                    localSeq.accumulateAndGet(seq, Math::max);
+                    return seq;
+                }
+            } catch (RuntimeException e) {
+                log.warn("分配WebSocket消息序号失败，使用本地序号", e);
+            }
+        }
+        return nextLocalSeq();
+    }
+
+    /**
+     * 本地分配序号，不小于当前时间对应的序号
+     * 集群模式下只使用对节点ID取模相同的序号，Redis不可用期间各节点分配的序号也不会重复
+     * @return
+     */
+    private long nextLocalSeq() {
+        long floor = clockSeq();
+        if (!webSocketProperties.isClusterEnabled()) {
+            return localSeq.updateAndGet(prev -> Math.max(prev + 1, floor));
+        }
+        long slot = snowflakeProperties.getWorkerId() % NODE_SLOTS;
+        return localSeq.updateAndGet(prev -> {
+            long next = Math.max(prev + 1, floor);
+            return next + Math.floorMod(slot - next, NODE_SLOTS);
+        });
+    }
+
+    /**
+     * 当前时间对应的序号
+     * @return
+     */
+    private long clockSeq() {
+        return (currentTimeMillis() - EPOCH) << MILLIS_SHIFT;
+    }
+
+    /**
+     * 当前时间（毫秒）
+     * @return
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * 记录本节点发出的消息
+     * @param channel 频道
+     * @param seq 序号
+     * @param message 消息内容
+     */
+    public void record(String channel, long seq, String message) {
+        if (!isEnabled()) {
+            return;
+        }
+        ringCache.get(channel, key -> new Ring(webSocketProperties.getReplayBufferSize())).add(seq, message);
+        if (webSocketProperties.isReplayStreamEnabled()) {
+            streamExecutor.execute(() -> appendStream(channel, seq, message));
+        }
+    }
+
+    /**
+     * 记录其他节点转发过来的消息帧（JSON对象或合并后的JSON数组）
+     * @param channel 频道
+     * @param frame 消息帧
+     */
+    public void recordFrame(String channel, String frame) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            Object parsed = JSON.parse(frame);
+            List<Object> events = parsed instanceof JSONArray ? (JSONArray) parsed : Collections.singletonList(parsed);
+            Ring ring = ringCache.get(channel, key -> new Ring(webSocketProperties.getReplayBufferSize()));
+            for (Object event : events) {
+                if (event instanceof JSONObject && ((JSONObject) event).containsKey("seq")) {
+                    long seq = ((JSONObject) event).getLongValue("seq");
+                    localSeq.accumulateAndGet(seq, Math::max);
+                    ring.add(seq, ((JSONObject) event).toJSONString());
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("记录WebSocket转发消息失败，频道：{}", channel, e);
+        }
+    }
+
+    /**
+     * 查询序号之后错过的消息
+     * @param channel 频道
+     * @param lastSeq 客户端最后收到的序号
+     * @return 按序号排列的消息
+     */
+    public List<String> since(String channel, long lastSeq) {
+        if (!isEnabled()) {
+            return Collections.emptyList();
+        }
+        Ring ring = ringCache.getIfPresent(channel);
+        if (ring != null && ring.covers(lastSeq)) {
+            return ring.since(lastSeq);
+        }
+        if (webSocketProperties.isReplayStreamEnabled()) {
+            // 内存中的消息不完整（已被覆盖或节点重启），从Redis Stream中补发
+            try {
+                return readStream(channel, lastSeq);
+            } catch (RuntimeException e) {
+                log.warn("读取WebSocket消息Stream失败，频道：{}", channel, e);
+            }
+        }
+        return ring == null ? Collections.emptyList() : ring.since(lastSeq);
+    }
+
+    private boolean isEnabled() {
+        return webSocketProperties.getReplayBufferSize() > 0;
+    }
+
+    private void appendStream(String channel, long seq, String message) {
+        String key = STREAM_KEY_PREFIX + channel;
+        try {
+            Map<String, String> fields = new HashMap<>();
+            fields.put("seq", String.valueOf(seq));
+            fields.put("message", message);
+            stringRedisTemplate.opsForStream().add(StreamRecords.newRecord().in(key).ofMap(fields));
+            stringRedisTemplate.opsForStream().trim(key, webSocketProperties.getReplayBufferSize(), true);
+            stringRedisTemplate.expire(key, Duration.ofMinutes(webSocketProperties.getReplayExpireMinutes()));
+        } catch (RuntimeException e) {
+            log.warn("写入WebSocket消息Stream失败，频道：{}", channel, e);
+        }
+    }
+
+    private List<String> readStream(String channel, long lastSeq) {
+        List<MapRecord<String, Object, Object>> records =
+                stringRedisTemplate.opsForStream().range(STREAM_KEY_PREFIX + channel, Range.unbounded());
+        if (records == null) {
+            return Collections.emptyList();
+        }
+        // 各节点写入Stream的顺序可能和序号不一致，按序号排列
+        TreeMap<Long, String> messages = new TreeMap<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            long seq = Long.parseLong(String.valueOf(record.getValue().get("seq")));
+            if (seq > lastSeq) {
+                messages.put(seq, String.valueOf(record.getValue().get("message")));
+            }
+        }
+        return new ArrayList<>(messages.values());
+    }
+
+    /**
+     * 一个频道最近的消息，按序号排列，超过容量时丢弃序号最小的消息
+     */
+    private static class Ring {
+
+        private final int capacity;
+        private final TreeMap<Long, String> messages = new TreeMap<>();
+
+        /**
+         * 已不在内存中的最大序号，客户端最后收到的序号小于它时内存中的消息不完整
+         */
+        private long lowerSeq = -1;
+
+        private Ring(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private synchronized void add(long seq, String message) {
+            if (lowerSeq < 0) {
+                // 第一条消息之前的消息不在内存中
+                lowerSeq = seq - 1;
+            }
+            if (seq <= lowerSeq) {
+                return;
+            }
+            // 集群中各节点发出的消息到达顺序可能和序号不一致，按序号插入
+            messages.put(seq, message);
+            if (messages.size() > capacity) {
+                lowerSeq = messages.pollFirstEntry().getKey();
+            }
+        }
+
+        private synchronized boolean covers(long lastSeq) {
+            return lastSeq >= lowerSeq;
+        }
+
+        private synchronized List<String> since(long lastSeq) {
+            return new ArrayList<>(messages.tailMap(lastSeq, false).values());
+        }
+    }
+}
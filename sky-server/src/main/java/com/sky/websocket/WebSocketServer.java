@@ -1,30 +1,60 @@
 package com.sky.websocket;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
 import java.io.IOException;
-import java.util.Collection;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * WebSocket服务端
+ * 握手时根据jwt令牌确定连接的角色：商家端订阅shop频道，用户端订阅自己的user:用户ID频道
  */
 @Component
-@ServerEndpoint("/ws/{sid}")
+@ServerEndpoint(value = "/ws/{sid}", configurator = WebSocketAuthConfigurator.class)
 @Slf4j
 public class WebSocketServer {
 
     /**
-     * 存储所有连接的客户端会话
-     * key: sid (会话ID)
-     * value: WebSocket会话
+     * 重连时携带最后收到的消息序号的参数名
      */
-    private static ConcurrentMap<String, Session> sessionMap = new ConcurrentHashMap<>();
+    private static final String LAST_SEQ = "lastSeq";
+
+    /**
+     * 消息分发器
+     * 每个连接都会创建一个新的WebSocketServer对象（不经过Spring注入），所以通过静态字段共享
+     */
+    private static WebSocketDispatcher dispatcher;
+
+    /**
+     * 消息重放缓冲区，用于向重连的客户端补发消息
+     */
+    private static WebSocketReplayBuffer replayBuffer;
+
+    /**
+     * 集群消息总线，用于把消息转发给连接在其他节点上的客户端
+     */
+    private static WebSocketClusterBus clusterBus;
+
+    @Autowired
+    public void setDispatcher(WebSocketDispatcher dispatcher) {
+        WebSocketServer.dispatcher = dispatcher;
+    }
+
+    @Autowired
+    public void setReplayBuffer(WebSocketReplayBuffer replayBuffer) {
+        WebSocketServer.replayBuffer = replayBuffer;
+    }
+
+    @Autowired
+    public void setClusterBus(WebSocketClusterBus clusterBus) {
+        WebSocketServer.clusterBus = clusterBus;
+    }
 
     /**
      * 连接建立成功调用的方法
@@ -32,9 +62,51 @@ public class WebSocketServer {
      * @param sid 客户端标识
      */
     @OnOpen
-    public void onOpen(Session session, @PathParam("sid") String sid) {
-        sessionMap.put(sid, session);
-        log.info("WebSocket连接建立成功，sid：{}，当前连接数：{}", sid, sessionMap.size());
+    public void onOpen(Session session, @PathParam("sid") String sid) throws IOException {
+        Object role = session.getUserProperties().get(WebSocketAuthConfigurator.ROLE);
+        String channel;
+        if (WebSocketAuthConfigurator.ROLE_SHOP.equals(role)) {
+            channel = WebSocketDispatcher.SHOP_CHANNEL;
+        } else if (WebSocketAuthConfigurator.ROLE_USER.equals(role)) {
+            channel = WebSocketDispatcher.userChannel((Long) session.getUserProperties().get(WebSocketAuthConfigurator.USER_ID));
+        } else {
+            log.info("WebSocket连接未携带有效令牌，拒绝连接，sid：{}", sid);
+            session.close(new CloseReason(CloseReason.CloseCodes.VIOLATED_POLICY, "unauthorized"));
+            return;
+        }
+        if (!dispatcher.register(sid, session, Collections.singletonList(channel))) {
+            log.warn("WebSocket连接数达到上限，拒绝连接，sid：{}", sid);
+            session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "too many sessions"));
+            return;
+        }
+        log.info("WebSocket连接建立成功，sid：{}，频道：{}，当前连接数：{}", sid, channel, dispatcher.getConnectionCount());
+        replay(sid, session, channel);
+    }
+
+    /**
+     * 重连的客户端携带最后收到的序号(lastSeq参数)时，补发断线期间错过的消息
+     * 补发和新消息可能交错到达，客户端按序号去重
+     * @param sid 客户端标识
+     * @param session 客户端会话
+     * @param channel 连接订阅的频道
+     */
+    private void replay(String sid, Session session, String channel) {
+        List<String> lastSeqParam = session.getRequestParameterMap().get(LAST_SEQ);
+        if (lastSeqParam == null || lastSeqParam.isEmpty()) {
+            return;
+        }
+        long lastSeq;
+        try {
+            lastSeq = Long.parseLong(lastSeqParam.get(0));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        List<String> missed = replayBuffer.since(channel, lastSeq);
+        if (!missed.isEmpty()) {
+            String frame = missed.size() == 1 ? missed.get(0) : "[" + String.join(",", missed) + "]";
+            dispatcher.send(sid, frame);
+            log.info("向客户端{}补发{}条消息，lastSeq：{}", sid, missed.size(), lastSeq);
+        }
     }
 
     /**
@@ -43,21 +115,34 @@ public class WebSocketServer {
      * @param sid 客户端标识
      */
     @OnMessage
-    public void onMessage(String message, @PathParam("sid") String sid) {
+    public void onMessage(String message, Session session, @PathParam("sid") String sid) {
+        dispatcher.touch(sid, session);
         log.info("收到来自客户端{}的消息：{}", sid, message);
         // 可以在这里处理客户端发送的消息，目前主要是服务端向客户端发送消息
         // 例如：可以回复确认消息
         sendToClient(sid, "服务器已收到消息：" + message);
     }
 
+    /**
+     * 收到客户端对心跳ping的回应
+     * @param pong pong消息
+     * @param session 客户端会话
+     * @param sid 客户端标识
+     */
+    @OnMessage
+    public void onPong(PongMessage pong, Session session, @PathParam("sid") String sid) {
+        dispatcher.touch(sid, session);
+    }
+
     /**
      * 连接关闭调用的方法
+     * @param session 客户端会话
      * @param sid 客户端标识
      */
     @OnClose
-    public void onClose(@PathParam("sid") String sid) {
-        sessionMap.remove(sid);
-        log.info("WebSocket连接关闭，sid：{}，当前连接数：{}", sid, sessionMap.size());
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        dispatcher.unregister(sid, session);
+        log.info("WebSocket连接关闭，sid：{}，当前连接数：{}", sid, dispatcher.getConnectionCount());
     }
 
     /**
@@ -71,40 +156,53 @@ public class WebSocketServer {
     }
 
     /**
-     * 向指定客户端发送消息
+     * 向指定客户端发送消息，只负责入队，不阻塞调用线程
+     * 客户端不在本节点时转发给其他节点
      * @param sid 客户端标识
      * @param message 消息内容
      */
     public void sendToClient(String sid, String message) {
-        Session session = sessionMap.get(sid);
-        if (session != null && session.isOpen()) {
-            try {
-                session.getBasicRemote().sendText(message);
-                log.info("向客户端{}发送消息：{}", sid, message);
-            } catch (IOException e) {
-                log.error("向客户端{}发送消息失败：", sid, e);
-            }
+        if (clusterBus.send(sid, message)) {
+            log.info("向客户端{}发送消息：{}", sid, message);
         } else {
-            log.warn("客户端{}未连接或连接已关闭", sid);
+            log.info("客户端{}未连接在本节点，已转发给其他节点", sid);
         }
     }
 
     /**
-     * 向所有客户端群发消息
+     * 向集群中所有商家端连接发送消息，只负责入队，不阻塞调用线程
+     * @param message 消息内容
+     */
+    public void sendToShop(String message) {
+        sendToChannel(WebSocketDispatcher.SHOP_CHANNEL, message);
+    }
+
+    /**
+     * 向集群中指定用户的所有连接发送消息，只负责入队，不阻塞调用线程
+     * @param userId 用户ID
+     * @param message 消息内容
+     */
+    public void sendToUser(Long userId, String message) {
+        sendToChannel(WebSocketDispatcher.userChannel(userId), message);
+    }
+
+    /**
+     * 向集群中订阅了指定频道的连接发送消息，只负责入队，不阻塞调用线程
+     * @param channel 频道
+     * @param message 消息内容
+     */
+    public void sendToChannel(String channel, String message) {
+        clusterBus.publish(channel, message);
+        log.info("向频道{}发送消息：{}", channel, message);
+    }
+
+    /**
+     * 向集群中所有客户端群发消息，只负责入队，不阻塞调用线程
      * @param message 消息内容
      */
     public void sendToAllClient(String message) {
-        Collection<Session> sessions = sessionMap.values();
-        for (Session session : sessions) {
-            if (session != null && session.isOpen()) {
-                try {
-                    session.getBasicRemote().sendText(message);
-                } catch (IOException e) {
-                    log.error("向客户端发送消息失败：", e);
-                }
-            }
-        }
-        log.info("向所有客户端群发消息，消息内容：{}，当前连接数：{}", message, sessionMap.size());
+        clusterBus.broadcast(message);
+        log.info("向所有客户端群发消息，消息内容：{}，当前连接数：{}", message, dispatcher.getConnectionCount());
     }
 
     /**
@@ -112,7 +210,7 @@ public class WebSocketServer {
      * @return 连接数
      */
     public int getConnectionCount() {
-        return sessionMap.size();
+        return dispatcher.getConnectionCount();
     }
 
     /**
@@ -121,7 +219,6 @@ public class WebSocketServer {
      * @return 是否连接
      */
     public boolean isConnected(String sid) {
-        Session session = sessionMap.get(sid);
-        return session != null && session.isOpen();
+        return dispatcher.isConnected(sid);
     }
 }
\ No newline at end of file
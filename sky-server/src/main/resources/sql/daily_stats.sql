@@ -0,0 +1,23 @@
+-- 每日运营数据汇总表：已封存(sealed=1)的日期直接从汇总表读取，当天(sealed=0)随下单、完成、注册增量累加，每5分钟用原始表重新统计一次
+CREATE TABLE IF NOT EXISTS daily_business_stats (
+    stat_date         DATE           NOT NULL COMMENT '统计日期',
+    turnover          DECIMAL(12, 2) NOT NULL DEFAULT 0 COMMENT '营业额（已完成订单金额）',
+    order_count       INT            NOT NULL DEFAULT 0 COMMENT '订单总数',
+    valid_order_count INT            NOT NULL DEFAULT 0 COMMENT '有效订单数（已完成）',
+    new_users         INT            NOT NULL DEFAULT 0 COMMENT '新增用户数',
+    sealed            TINYINT        NOT NULL DEFAULT 0 COMMENT '是否已封存 0否 1是',
+    update_time       DATETIME       NULL COMMENT '更新时间',
+    PRIMARY KEY (stat_date)
+) COMMENT '每日运营数据汇总';
+
+-- 每日商品销量汇总表：按订单明细名称汇总已完成订单的销量
+CREATE TABLE IF NOT EXISTS daily_dish_sales (
+    stat_date DATE        NOT NULL COMMENT '统计日期',
+    name      VARCHAR(32) NOT NULL COMMENT '商品名称',
+    number    INT         NOT NULL DEFAULT 0 COMMENT '销量',
+    PRIMARY KEY (stat_date, name)
+) COMMENT '每日商品销量汇总';
+
+-- 汇总任务按下单时间/注册时间切片统计，需要对应的索引
+CREATE INDEX idx_orders_order_time ON orders (order_time);
+CREATE INDEX idx_user_create_time ON user (create_time);
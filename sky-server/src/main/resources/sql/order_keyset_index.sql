@@ -0,0 +1,10 @@
+-- 订单游标分页（按 order_time desc, id desc 定位）使用的索引
+-- InnoDB二级索引本身包含主键id，(x, order_time) 索引即可按 (order_time, id) 有序读取
+
+-- 用户端历史订单：where user_id = ? [and status = ?] order by order_time desc, id desc
+CREATE INDEX idx_orders_user_time ON orders (user_id, order_time);
+
+-- 管理端按状态搜索订单：where status = ? order by order_time desc, id desc
+CREATE INDEX idx_orders_status_time ON orders (status, order_time);
+
+-- 不带条件的管理端搜索使用 daily_stats.sql 中的 idx_orders_order_time (order_time)
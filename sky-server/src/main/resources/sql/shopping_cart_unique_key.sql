@@ -0,0 +1,24 @@
+-- 购物车同一用户同一商品（菜品+口味 或 套餐）只保留一行，加购改为 insert ... on duplicate key update
+-- dish_id、setmeal_id、dish_flavor 可能为NULL，而唯一索引不认为两个NULL相等，
+-- 所以用生成列把NULL换成 0 / '' 后再建唯一索引
+
+-- 1. 合并已有的重复行：数量累加到id最小的一行，删除其余行
+UPDATE shopping_cart sc
+    JOIN (SELECT MIN(id) keep_id, SUM(number) total
+          FROM shopping_cart
+          GROUP BY user_id, IFNULL(dish_id, 0), IFNULL(setmeal_id, 0), IFNULL(dish_flavor, '')
+          HAVING COUNT(*) > 1) dup ON sc.id = dup.keep_id
+SET sc.number = dup.total;
+
+DELETE sc FROM shopping_cart sc
+    JOIN shopping_cart keep ON keep.user_id = sc.user_id
+        AND IFNULL(keep.dish_id, 0) = IFNULL(sc.dish_id, 0)
+        AND IFNULL(keep.setmeal_id, 0) = IFNULL(sc.setmeal_id, 0)
+        AND IFNULL(keep.dish_flavor, '') = IFNULL(sc.dish_flavor, '')
+        AND keep.id < sc.id;
+
+-- 2. 商品标识生成列和唯一索引
+ALTER TABLE shopping_cart
+    ADD COLUMN item_key VARCHAR(100)
+        AS (CONCAT(IFNULL(dish_id, 0), '_', IFNULL(setmeal_id, 0), '_', IFNULL(dish_flavor, ''))) STORED,
+    ADD UNIQUE KEY uk_shopping_cart_user_item (user_id, item_key);
@@ -0,0 +1,316 @@
+package com.sky.cache;
+
+import com.sky.properties.DishCacheProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.cache.BatchStrategies;
+import org.springframework.data.redis.cache.BatchStrategy;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanCursor;
+import org.springframework.data.redis.core.ScanIteration;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 清理缓存时Redis主线程的阻塞时间：原来的KEYS dish_* + DEL 对比 SCAN分批 / 按分类UNLINK
+ * Redis单线程执行命令，单条命令的耗时就是其他客户端要排队等待的时间，
+ * 这里用一个串行执行命令的内存keyspace代替Redis，统计每条命令的执行时间
+ */
+class CacheEvictionLatencyTest {
+
+    private static final int TOTAL_KEYS = 100_000;
+    private static final int DISH_CATEGORIES = 50;
+    private static final int SETMEAL_CATEGORIES = 50;
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int ROUNDS = 15;
+
+    @Test
+    void scanAndUnlinkBlockShorterThanKeys() {
+        RedisStandIn redis = populated();
+        DishCache dishCache = dishCache(redis);
+        List<Long> categoryIds = categoryIds();
+
+        Result keysDish = measure(redis, "KEYS dish_* + DEL", DISH_CATEGORIES,
+                () -> redis.del(toBytes(redis.keys(DishCache.KEY_PREFIX + "*"))));
+        Result unlinkDish = measure(redis, "DishCache.evict (UNLINK)", DISH_CATEGORIES, () -> dishCache.evict(categoryIds));
+        Result keysSetmeal = measure(redis, "RedisCacheWriter.clean KEYS", SETMEAL_CATEGORIES,
+                () -> clean(redis, BatchStrategies.keys()));
+        Result scanSetmeal = measure(redis, "RedisCacheWriter.clean SCAN 1000", SETMEAL_CATEGORIES,
+                () -> clean(redis, BatchStrategies.scan(1000)));
+
+        for (Result result : Arrays.asList(keysDish, unlinkDish, keysSetmeal, scanSetmeal)) {
+            System.out.println(result);
+        }
+        assertEquals(1, unlinkDish.commands);
+        assertEquals(TOTAL_KEYS / 1000 + 1, scanSetmeal.commands);
+        assertTrue(unlinkDish.maxNanos < keysDish.maxNanos, "按分类UNLINK的单条命令耗时应小于KEYS");
+        assertTrue(scanSetmeal.maxNanos < keysSetmeal.maxNanos, "SCAN分批的单条命令耗时应小于KEYS");
+    }
+
+    /**
+     * 先预热，再取多轮中单条命令最长耗时和总耗时的中位数，每轮结束后把删掉的key补回去
+     */
+    private static Result measure(RedisStandIn redis, String name, int removed, Runnable evict) {
+        List<Long> maxNanos = new ArrayList<>();
+        List<Long> totalNanos = new ArrayList<>();
+        int commands = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            redis.reset();
+            evict.run();
+            assertEquals(TOTAL_KEYS - removed, redis.size());
+            if (round >= WARMUP_ROUNDS) {
+                maxNanos.add(redis.maxNanos);
+                totalNanos.add(redis.totalNanos);
+                commands = redis.commands;
+            }
+            refill(redis);
+        }
+        Collections.sort(maxNanos);
+        Collections.sort(totalNanos);
+        return new Result(name, commands, maxNanos.get(ROUNDS / 2), totalNanos.get(ROUNDS / 2));
+    }
+
+    private static RedisStandIn populated() {
+        RedisStandIn redis = new RedisStandIn();
+        refill(redis);
+        // 其余是购物车、登录态等与菜品无关的key
+        for (int i = redis.size(); i < TOTAL_KEYS; i++) {
+            redis.set("cart:item:" + i);
+        }
+        return redis;
+    }
+
+    private static void refill(RedisStandIn redis) {
+        for (long i = 1; i <= DISH_CATEGORIES; i++) {
+            redis.set(DishCache.KEY_PREFIX + i);
+        }
+        for (long i = 1; i <= SETMEAL_CATEGORIES; i++) {
+            redis.set("setmealCache::" + i);
+        }
+    }
+
+    private static List<Long> categoryIds() {
+        List<Long> ids = new ArrayList<>();
+        for (long i = 1; i <= DISH_CATEGORIES; i++) {
+            ids.add(i);
+        }
+        return ids;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static DishCache dishCache(RedisStandIn redis) {
+        RedisTemplate<Object, Object> redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.unlink(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> keys = invocation.getArgument(0);
+            return redis.del(toBytes(keys));
+        });
+        DishCache dishCache = new DishCache();
+        ReflectionTestUtils.setField(dishCache, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(dishCache, "stringRedisTemplate", mock(StringRedisTemplate.class));
+        DishCacheProperties properties = new DishCacheProperties();
+        // 只测量一次清理，延迟的再次清理会混进后面的测量
+        properties.setDelayedEvictMillis(0);
+        ReflectionTestUtils.setField(dishCache, "dishCacheProperties", properties);
+        dishCache.init();
+        return dishCache;
+    }
+
+    /**
+     * 通过真实的RedisCacheWriter清理套餐缓存，和@CacheEvict(allEntries = true)走的是同一段代码
+     */
+    private static void clean(RedisStandIn redis, BatchStrategy batchStrategy) {
+        RedisConnection connection = redis.connection();
+        RedisConnectionFactory factory = mock(RedisConnectionFactory.class);
+        when(factory.getConnection()).thenReturn(connection);
+        RedisCacheWriter.nonLockingRedisCacheWriter(factory, batchStrategy)
+                .clean("setmealCache", "setmealCache::*".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[][] toBytes(Collection<String> keys) {
+        byte[][] bytes = new byte[keys.size()][];
+        int i = 0;
+        for (String key : keys) {
+            bytes[i++] = key.getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    private static final class Result {
+        private final String name;
+        private final int commands;
+        private final long maxNanos;
+        private final long totalNanos;
+
+        private Result(String name, int commands, long maxNanos, long totalNanos) {
+            this.name = name;
+            this.commands = commands;
+            this.maxNanos = maxNanos;
+            this.totalNanos = totalNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-34s commands=%-4d maxBlock=%8.3fms totalBusy=%8.3fms",
+                    name, commands, maxNanos / 1e6, totalNanos / 1e6);
+        }
+    }
+
+    /**
+     * 单线程执行命令的内存keyspace，记录每条命令占用"主线程"的时间
+     */
+    private static final class RedisStandIn {
+
+        private static final byte[] VALUE = new byte[64];
+
+        private final TreeMap<String, byte[]> keyspace = new TreeMap<>();
+        private final Map<Long, String> cursors = new HashMap<>();
+        private final AtomicLong cursorIds = new AtomicLong();
+        private int commands;
+        private long maxNanos;
+        private long totalNanos;
+
+        void set(String key) {
+            keyspace.put(key, VALUE);
+        }
+
+        int size() {
+            return keyspace.size();
+        }
+
+        void reset() {
+            commands = 0;
+            maxNanos = 0;
+            totalNanos = 0;
+        }
+
+        Result result(String name) {
+            return new Result(name, commands, maxNanos, totalNanos);
+        }
+
+        synchronized Set<String> keys(String pattern) {
+            long start = System.nanoTime();
+            Pattern regex = glob(pattern);
+            Set<String> keys = new LinkedHashSet<>();
+            for (String key : keyspace.keySet()) {
+                if (regex.matcher(key).matches()) {
+                    keys.add(key);
+                }
+            }
+            record(start);
+            return keys;
+        }
+
+        /**
+         * 和Redis一样每次遍历COUNT个key，返回其中匹配的部分
+         */
+        synchronized ScanIteration<byte[]> scan(long cursorId, ScanOptions options) {
+            long start = System.nanoTime();
+            Pattern regex = glob(options.getPattern());
+            String from = cursors.remove(cursorId);
+            Map<String, byte[]> tail = from == null ? keyspace : keyspace.tailMap(from, false);
+            List<byte[]> items = new ArrayList<>();
+            String last = null;
+            int visited = 0;
+            for (String key : tail.keySet()) {
+                if (visited++ == options.getCount()) {
+                    break;
+                }
+                last = key;
+                if (regex.matcher(key).matches()) {
+                    items.add(key.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            long next = 0;
+            if (last != null && keyspace.higherKey(last) != null) {
+                next = cursorIds.incrementAndGet();
+                cursors.put(next, last);
+            }
+            record(start);
+            return new ScanIteration<>(next, items);
+        }
+
+        synchronized long del(byte[][] keys) {
+            long start = System.nanoTime();
+            long removed = 0;
+            for (byte[] key : keys) {
+                if (keyspace.remove(new String(key, StandardCharsets.UTF_8)) != null) {
+                    removed++;
+                }
+            }
+            record(start);
+            return removed;
+        }
+
+        RedisConnection connection() {
+            return (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{RedisConnection.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "keys":
+                                return new LinkedHashSet<>(Arrays.asList(
+                                        toBytes(keys(new String((byte[]) args[0], StandardCharsets.UTF_8)))));
+                            case "scan":
+                                return scanCursor((ScanOptions) args[0]);
+                            case "del":
+                                return del((byte[][]) args[0]);
+                            case "close":
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+
+        private Cursor<byte[]> scanCursor(ScanOptions options) {
+            return new ScanCursor<byte[]>(options) {
+                @Override
+                protected ScanIteration<byte[]> doScan(long cursorId, ScanOptions scanOptions) {
+                    return scan(cursorId, scanOptions);
+                }
+            }.open();
+        }
+
+        private void record(long start) {
+            long elapsed = System.nanoTime() - start;
+            commands++;
+            totalNanos += elapsed;
+            maxNanos = Math.max(maxNanos, elapsed);
+        }
+
+        private static Pattern glob(String pattern) {
+            StringBuilder regex = new StringBuilder();
+            String[] parts = pattern.split("\\*", -1);
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    regex.append(".*");
+                }
+                regex.append(Pattern.quote(parts[i]));
+            }
+            return Pattern.compile(regex.toString());
+        }
+    }
+}
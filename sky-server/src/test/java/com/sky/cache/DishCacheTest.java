@@ -0,0 +1,224 @@
+package com.sky.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.sky.properties.DishCacheProperties;
+import com.sky.vo.DishVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DishCacheTest {
+
+    private static final Long CATEGORY_ID = 10L;
+
+    private DishCache dishCache;
+    private DishCacheProperties properties;
+    private ValueOperations<Object, Object> valueOperations;
+    private RedisTemplate<Object, Object> redisTemplate;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        // Redis中始终没有数据，每次重建都会走到数据库
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        properties = new DishCacheProperties();
+        dishCache = new DishCache();
+        ReflectionTestUtils.setField(dishCache, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(dishCache, "stringRedisTemplate", mock(StringRedisTemplate.class));
+        ReflectionTestUtils.setField(dishCache, "dishCacheProperties", properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dishCache.destroy();
+    }
+
+    @Test
+    void concurrentMissesOnColdKeyLoadOnce() throws Exception {
+        dishCache.init();
+        int threads = 16;
+        AtomicInteger loads = new AtomicInteger();
+        List<DishVO> dishes = dishes("宫保鸡丁");
+        Supplier<List<DishVO>> loader = () -> {
+            loads.incrementAndGet();
+            sleep(200);
+            return dishes;
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<DishVO>>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return dishCache.get(CATEGORY_ID, loader);
+            }));
+        }
+        start.countDown();
+
+        List<DishVO> first = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<List<DishVO>> result : results) {
+            assertSame(first, result.get(5, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        assertEquals(1, loads.get());
+        assertEquals(dishes, first);
+        assertEquals(1L, dishCache.stats().getDbLoads());
+        verify(valueOperations, times(1)).set(eq(DishCache.KEY_PREFIX + CATEGORY_ID), any(),
+                eq(Duration.ofSeconds(properties.getRedisExpireSeconds())));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void staleDataServedAfterLocalExpiry() throws Exception {
+        properties.setStaleWhileRevalidate(true);
+        dishCache.init();
+
+        List<DishVO> oldDishes = dishes("宫保鸡丁");
+        assertEquals(oldDishes, dishCache.get(CATEGORY_ID, () -> oldDishes));
+
+        // 模拟本地缓存到期：没有经过evict，条目直接从本地缓存消失
+        Cache<Long, List<DishVO>> localCache = (Cache<Long, List<DishVO>>) ReflectionTestUtils.getField(dishCache, "localCache");
+        localCache.invalidateAll();
+
+        List<DishVO> newDishes = dishes("鱼香肉丝");
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<List<DishVO>> loader = () -> {
+            loads.incrementAndGet();
+            await(release);
+            return newDishes;
+        };
+
+        // 重建未完成时直接返回旧数据，且只触发一次后台刷新
+        assertEquals(oldDishes, dishCache.get(CATEGORY_ID, loader));
+        assertEquals(oldDishes, dishCache.get(CATEGORY_ID, loader));
+        assertEquals(2L, dishCache.stats().getStaleServed());
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!newDishes.equals(localCache.getIfPresent(CATEGORY_ID)) && System.currentTimeMillis() < deadline) {
+            sleep(10);
+        }
+        assertEquals(newDishes, dishCache.get(CATEGORY_ID, loader));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void evictDuringSlowLoadSkipsWriteBack() throws Exception {
+        properties.setDelayedEvictMillis(0);
+        dishCache.init();
+
+        List<DishVO> oldDishes = dishes("宫保鸡丁");
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        // 查询数据库时分类还没有修改，清理发生在查询返回之前
+        Future<List<DishVO>> result = pool.submit(() -> dishCache.get(CATEGORY_ID, () -> {
+            loading.countDown();
+            await(release);
+            return oldDishes;
+        }));
+        await(loading);
+        dishCache.evict(Collections.singletonList(CATEGORY_ID));
+        release.countDown();
+
+        assertEquals(oldDishes, result.get(5, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        Cache<Long, List<DishVO>> localCache = (Cache<Long, List<DishVO>>) ReflectionTestUtils.getField(dishCache, "localCache");
+        assertNull(localCache.getIfPresent(CATEGORY_ID));
+        verify(valueOperations, never()).set(any(), any(), any(Duration.class));
+
+        // 下一次请求重新查询数据库，拿到修改后的数据
+        List<DishVO> newDishes = dishes("鱼香肉丝");
+        assertEquals(newDishes, dishCache.get(CATEGORY_ID, () -> newDishes));
+        assertEquals(newDishes, localCache.getIfPresent(CATEGORY_ID));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void evictRightAfterRedisWriteRemovesWrittenData() {
+        properties.setDelayedEvictMillis(0);
+        dishCache.init();
+
+        // 写入Redis的同时分类被清理，检查通过之后才轮到清理
+        doAnswer(invocation -> {
+            dishCache.evict(Collections.singletonList(CATEGORY_ID));
+            return null;
+        }).when(valueOperations).set(any(), any(), any(Duration.class));
+
+        List<DishVO> oldDishes = dishes("宫保鸡丁");
+        assertEquals(oldDishes, dishCache.get(CATEGORY_ID, () -> oldDishes));
+
+        Cache<Long, List<DishVO>> localCache = (Cache<Long, List<DishVO>>) ReflectionTestUtils.getField(dishCache, "localCache");
+        assertNull(localCache.getIfPresent(CATEGORY_ID));
+        verify(redisTemplate).unlink(DishCache.KEY_PREFIX + CATEGORY_ID);
+    }
+
+    @Test
+    void evictRunsAgainAfterDelay() {
+        properties.setDelayedEvictMillis(50);
+        dishCache.init();
+
+        dishCache.evict(Collections.singletonList(CATEGORY_ID));
+
+        verify(redisTemplate, timeout(2000).times(2))
+                .unlink(Collections.singletonList(DishCache.KEY_PREFIX + CATEGORY_ID));
+    }
+
+    private static List<DishVO> dishes(String name) {
+        return Collections.singletonList(DishVO.builder().id(1L).name(name).categoryId(CATEGORY_ID).build());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
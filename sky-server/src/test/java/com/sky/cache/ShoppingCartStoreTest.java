@@ -0,0 +1,258 @@
+package com.sky.cache;
+
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.ShoppingCartProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用luaj执行购物车的Lua脚本，Redis命令由内存中的Hash模拟
+ */
+class ShoppingCartStoreTest {
+
+    private static final Long USER_ID = 100L;
+    private static final String COUNT_KEY = "cart:" + USER_ID;
+    private static final String ITEM_KEY = "cart:item:" + USER_ID;
+    private static final String FIELD = "d:1:";
+
+    private final FakeRedis redis = new FakeRedis();
+    private ShoppingCartStore store;
+    private ShoppingCartMapper shoppingCartMapper;
+    private long expireSeconds;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        doAnswer(invocation -> {
+            RedisScript<Long> script = invocation.getArgument(0);
+            List<String> keys = invocation.getArgument(1);
+            Object[] arguments = invocation.getArguments();
+            List<String> args = new ArrayList<>();
+            for (int i = 2; i < arguments.length; i++) {
+                args.add(String.valueOf(arguments[i]));
+            }
+            return redis.eval(script.getScriptAsString(), keys, args);
+        }).when(stringRedisTemplate).execute(any(RedisScript.class), anyList(), any());
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        when(stringRedisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        when(hashOperations.entries(anyString()))
+                .thenAnswer(invocation -> new HashMap<Object, Object>(redis.hash(invocation.getArgument(0))));
+
+        shoppingCartMapper = mock(ShoppingCartMapper.class);
+        ShoppingCartProperties properties = new ShoppingCartProperties();
+        expireSeconds = Duration.ofDays(properties.getExpireDays()).getSeconds();
+
+        store = new ShoppingCartStore();
+        ReflectionTestUtils.setField(store, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(store, "shoppingCartMapper", shoppingCartMapper);
+        ReflectionTestUtils.setField(store, "shoppingCartProperties", properties);
+    }
+
+    @Test
+    void subRefreshesTtlOfBothKeys() {
+        dbCart(3);
+        store.list(USER_ID);
+        redis.ttl.put(COUNT_KEY, 10L);
+        redis.ttl.put(ITEM_KEY, 10L);
+
+        assertEquals(2, store.sub(item()));
+
+        assertEquals(expireSeconds, redis.ttl.get(COUNT_KEY));
+        assertEquals(expireSeconds, redis.ttl.get(ITEM_KEY));
+    }
+
+    @Test
+    void missingCountHashIsTreatedAsNotLoaded() {
+        dbCart(3);
+        store.list(USER_ID);
+        // 数量Hash过期，商品信息Hash和其中的已加载标记还在
+        redis.hashes.remove(COUNT_KEY);
+
+        assertEquals(2, store.sub(item()));
+
+        // 重新从数据库加载后再减一，而不是当作购物车中没有该商品
+        verify(shoppingCartMapper, times(2)).list(any(ShoppingCart.class));
+        assertEquals("2", redis.hash(COUNT_KEY).get(FIELD));
+    }
+
+    @Test
+    void listReloadsWhenCountHashIsMissing() {
+        dbCart(3);
+        store.list(USER_ID);
+        redis.hashes.remove(COUNT_KEY);
+
+        List<ShoppingCart> list = store.list(USER_ID);
+
+        assertEquals(1, list.size());
+        assertEquals(3, list.get(0).getNumber());
+    }
+
+    @Test
+    void legacyCountHashWithoutMarkerIsKept() {
+        dbCart(1);
+        // 旧版本写入的购物车：只有商品信息Hash中有标记，数量还没有写回数据库
+        redis.hash(ITEM_KEY).put("_", "1");
+        redis.hash(ITEM_KEY).put(FIELD, "{\"dishId\":1,\"name\":\"宫保鸡丁\"}");
+        redis.hash(COUNT_KEY).put(FIELD, "5");
+
+        assertEquals(4, store.sub(item()));
+        assertEquals("1", redis.hash(COUNT_KEY).get("_"));
+    }
+
+    @Test
+    void clearedCartStaysLoaded() {
+        dbCart(3);
+        store.list(USER_ID);
+
+        store.clear(USER_ID);
+
+        assertTrue(store.list(USER_ID).isEmpty());
+        verify(shoppingCartMapper, times(1)).list(any(ShoppingCart.class));
+        assertTrue(redis.sets.get("cart:dirty").contains(String.valueOf(USER_ID)));
+        assertEquals(expireSeconds, redis.ttl.get(COUNT_KEY));
+    }
+
+    @Test
+    void addToLoadedCartDoesNotQueryDatabase() {
+        dbCart(3);
+        store.list(USER_ID);
+
+        assertEquals(4, store.add(item(), loaded -> { }));
+
+        verify(shoppingCartMapper, times(1)).list(any(ShoppingCart.class));
+        verify(shoppingCartMapper, never()).insert(any(ShoppingCart.class));
+    }
+
+    private void dbCart(int number) {
+        ShoppingCart cart = ShoppingCart.builder().id(1L).userId(USER_ID).dishId(1L).name("宫保鸡丁")
+                .amount(new BigDecimal("32")).number(number).build();
+        when(shoppingCartMapper.list(any(ShoppingCart.class))).thenAnswer(invocation -> {
+            ShoppingCart copy = ShoppingCart.builder().id(cart.getId()).userId(cart.getUserId()).dishId(cart.getDishId())
+                    .name(cart.getName()).amount(cart.getAmount()).number(cart.getNumber()).build();
+            return new ArrayList<>(Collections.singletonList(copy));
+        });
+    }
+
+    private static ShoppingCart item() {
+        return ShoppingCart.builder().userId(USER_ID).dishId(1L).build();
+    }
+
+    /**
+     * 只实现购物车脚本用到的命令
+     */
+    private static class FakeRedis {
+
+        private final Map<String, Map<String, String>> hashes = new HashMap<>();
+        private final Map<String, Set<String>> sets = new HashMap<>();
+        private final Map<String, Long> ttl = new HashMap<>();
+
+        private Map<String, String> hash(String key) {
+            return hashes.computeIfAbsent(key, k -> new HashMap<>());
+        }
+
+        private Long eval(String script, List<String> keys, List<String> args) {
+            Globals globals = JsePlatform.standardGlobals();
+            globals.set("KEYS", table(keys));
+            globals.set("ARGV", table(args));
+            LuaTable redisTable = new LuaTable();
+            redisTable.set("call", new VarArgFunction() {
+                @Override
+                public Varargs invoke(Varargs varargs) {
+                    List<String> command = new ArrayList<>();
+                    for (int i = 1; i <= varargs.narg(); i++) {
+                        command.add(varargs.arg(i).tojstring());
+                    }
+                    return execute(command);
+                }
+            });
+            globals.set("redis", redisTable);
+            LuaValue result = globals.load(script).call();
+            // 和Redis一样，空的Hash不存在
+            hashes.values().removeIf(Map::isEmpty);
+            return result.tolong();
+        }
+
+        private LuaValue execute(List<String> command) {
+            String key = command.get(1);
+            switch (command.get(0)) {
+                case "hexists":
+                    return LuaValue.valueOf(hashes.containsKey(key) && hashes.get(key).containsKey(command.get(2)) ? 1 : 0);
+                case "exists":
+                    return LuaValue.valueOf(hashes.containsKey(key) && !hashes.get(key).isEmpty() ? 1 : 0);
+                case "hget": {
+                    String value = hashes.containsKey(key) ? hashes.get(key).get(command.get(2)) : null;
+                    return value == null ? LuaValue.FALSE : LuaValue.valueOf(value);
+                }
+                case "hset":
+                    hash(key).put(command.get(2), command.get(3));
+                    return LuaValue.valueOf(1);
+                case "hdel":
+                    return LuaValue.valueOf(hashes.containsKey(key) && hashes.get(key).remove(command.get(2)) != null ? 1 : 0);
+                case "hincrby": {
+                    long value = Long.parseLong(hash(key).getOrDefault(command.get(2), "0")) + Long.parseLong(command.get(3));
+                    hash(key).put(command.get(2), String.valueOf(value));
+                    return LuaValue.valueOf(value);
+                }
+                case "expire":
+                    if (!hashes.containsKey(key)) {
+                        return LuaValue.valueOf(0);
+                    }
+                    ttl.put(key, Long.parseLong(command.get(2)));
+                    return LuaValue.valueOf(1);
+                case "sadd":
+                    sets.computeIfAbsent(key, k -> new HashSet<>()).addAll(command.subList(2, command.size()));
+                    return LuaValue.valueOf(1);
+                case "del":
+                    for (String deleted : command.subList(1, command.size())) {
+                        hashes.remove(deleted);
+                        ttl.remove(deleted);
+                    }
+                    return LuaValue.valueOf(1);
+                default:
+                    throw new UnsupportedOperationException(command.get(0));
+            }
+        }
+
+        private static LuaTable table(List<String> values) {
+            LuaTable table = new LuaTable();
+            for (int i = 0; i < values.size(); i++) {
+                table.set(i + 1, LuaValue.valueOf(values.get(i)));
+            }
+            return table;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.sky.service.impl;
+
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.entity.DailyBusinessStats;
+import com.sky.entity.Orders;
+import com.sky.mapper.DailyBusinessStatsMapper;
+import com.sky.mapper.DailyDishSalesMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.UserMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 运营数据汇总：今天读增量维护的未封存行，已封存日期读汇总表，只有缺失的日期才扫描原始表
+ */
+@ExtendWith(MockitoExtension.class)
+class DailyStatsServiceImplTest {
+
+    @Mock
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
+    @Mock
+    private DailyDishSalesMapper dailyDishSalesMapper;
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private UserMapper userMapper;
+
+    @InjectMocks
+    private DailyStatsServiceImpl dailyStatsService;
+
+    @Test
+    void todayIsServedFromUnsealedRow() {
+        LocalDate today = LocalDate.now();
+        DailyBusinessStats todayStats = stats(today, DailyBusinessStats.UNSEALED);
+        when(dailyBusinessStatsMapper.getUnsealed(today)).thenReturn(todayStats);
+
+        Map<LocalDate, DailyBusinessStats> statsMap = dailyStatsService.getDailyStats(today, today);
+
+        assertSame(todayStats, statsMap.get(today));
+        verify(orderMapper, never()).statisticsGroupByDate(anyMap());
+        verify(userMapper, never()).countGroupByDate(anyMap());
+    }
+
+    @Test
+    void rangeReadsSealedDaysAndTodayWithoutRawScan() {
+        LocalDate today = LocalDate.now();
+        LocalDate yesterday = today.minusDays(1);
+        when(dailyBusinessStatsMapper.listSealed(yesterday, today))
+                .thenReturn(Collections.singletonList(stats(yesterday, DailyBusinessStats.SEALED)));
+        when(dailyBusinessStatsMapper.getUnsealed(today)).thenReturn(stats(today, DailyBusinessStats.UNSEALED));
+
+        Map<LocalDate, DailyBusinessStats> statsMap = dailyStatsService.getDailyStats(yesterday, today);
+
+        assertEquals(2, statsMap.size());
+        verify(orderMapper, never()).statisticsGroupByDate(anyMap());
+    }
+
+    @Test
+    void todayWithoutBaselineFallsBackToRawScan() {
+        LocalDate today = LocalDate.now();
+        when(dailyBusinessStatsMapper.getUnsealed(today)).thenReturn(null);
+        when(orderMapper.statisticsGroupByDate(anyMap())).thenReturn(Collections.emptyList());
+        when(userMapper.countGroupByDate(anyMap())).thenReturn(Collections.emptyList());
+
+        dailyStatsService.getDailyStats(today, today);
+
+        verify(orderMapper).statisticsGroupByDate(anyMap());
+    }
+
+    @Test
+    void todaySalesMergeWithSealedSales() {
+        LocalDate today = LocalDate.now();
+        LocalDate yesterday = today.minusDays(1);
+        when(dailyBusinessStatsMapper.listSealed(yesterday, today))
+                .thenReturn(Collections.singletonList(stats(yesterday, DailyBusinessStats.SEALED)));
+        when(dailyDishSalesMapper.sumSealedByName(yesterday, today))
+                .thenReturn(Arrays.asList(new GoodsSalesDTO("宫保鸡丁", 3), new GoodsSalesDTO("鱼香肉丝", 5)));
+        when(dailyBusinessStatsMapper.getUnsealed(today)).thenReturn(stats(today, DailyBusinessStats.UNSEALED));
+        when(dailyDishSalesMapper.listByDate(today)).thenReturn(Collections.singletonList(new GoodsSalesDTO("宫保鸡丁", 4)));
+
+        List<GoodsSalesDTO> top10 = dailyStatsService.getSalesTop10(yesterday, today);
+
+        assertEquals("宫保鸡丁", top10.get(0).getName());
+        assertEquals(7, top10.get(0).getNumber());
+        assertEquals(5, top10.get(1).getNumber());
+        verify(orderMapper, never()).getSalesGroupByDate(anyMap());
+    }
+
+    @Test
+    void completedOrdersUpdateRowBeforeDishSales() {
+        List<Long> ids = Arrays.asList(1L, 2L);
+
+        dailyStatsService.ordersCompleted(ids);
+
+        InOrder inOrder = inOrder(dailyBusinessStatsMapper, dailyDishSalesMapper);
+        inOrder.verify(dailyBusinessStatsMapper).addCompletedOrders(ids, Orders.COMPLETED);
+        inOrder.verify(dailyDishSalesMapper).addCompletedOrders(ids, Orders.COMPLETED);
+    }
+
+    @Test
+    void incrementFailureDoesNotPropagate() {
+        when(dailyBusinessStatsMapper.incrementOrderCount(any())).thenThrow(new RuntimeException("lock wait timeout"));
+
+        dailyStatsService.orderCreated(LocalDateTime.now());
+    }
+
+    private static DailyBusinessStats stats(LocalDate date, Integer sealed) {
+        return DailyBusinessStats.builder()
+                .statDate(date)
+                .turnover(BigDecimal.TEN)
+                .orderCount(2)
+                .validOrderCount(1)
+                .newUsers(1)
+                .sealed(sealed)
+                .build();
+    }
+}
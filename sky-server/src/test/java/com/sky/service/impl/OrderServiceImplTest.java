@@ -0,0 +1,208 @@
+package com.sky.service.impl;
+
+import com.github.pagehelper.PageHelper;
+import com.sky.cache.OrderStatusCounter;
+import com.sky.constant.MessageConstant;
+import com.sky.context.BaseContext;
+import com.sky.dto.OrdersCancelDTO;
+import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.result.CursorPageResult;
+import com.sky.result.PageResult;
+import com.sky.service.DailyStatsService;
+import com.sky.vo.OrderVO;
+import com.sky.websocket.OrderNotifier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单分页查询：每页订单明细的查询次数与每页订单数无关
+ * 订单状态流转：每次流转只执行一条带状态条件的update
+ */
+@ExtendWith(MockitoExtension.class)
+class OrderServiceImplTest {
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private OrderDetailMapper orderDetailMapper;
+    @Mock
+    private OrderStatusCounter orderStatusCounter;
+    @Mock
+    private OrderNotifier orderNotifier;
+    @Mock
+    private DailyStatsService dailyStatsService;
+
+    @InjectMocks
+    private OrderServiceImpl orderService;
+
+    @AfterEach
+    void clearPage() {
+        PageHelper.clearPage();
+        BaseContext.removeCurrentId();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 50})
+    void conditionSearchQueriesDetailsOncePerPage(int pageSize) {
+        List<Orders> orders = orders(pageSize);
+        when(orderMapper.pageQuery(any(OrdersPageQueryDTO.class))).thenReturn(orders);
+        when(orderDetailMapper.getByOrderIds(anyList())).thenReturn(details(orders));
+
+        OrdersPageQueryDTO dto = new OrdersPageQueryDTO();
+        dto.setPage(1);
+        dto.setPageSize(pageSize);
+        PageResult result = orderService.conditionSearch(dto);
+
+        verify(orderMapper, times(1)).pageQuery(any(OrdersPageQueryDTO.class));
+        verify(orderDetailMapper, times(1)).getByOrderIds(anyList());
+        verify(orderDetailMapper, never()).getByOrderId(anyLong());
+        assertDetailsGrouped(orders, (List<OrderVO>) result.getRecords());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 50})
+    void cursorSearchQueriesDetailsOncePerPage(int pageSize) {
+        // 多查一条用于判断是否有下一页
+        List<Orders> orders = orders(pageSize + 1);
+        when(orderMapper.cursorQuery(any(OrdersPageQueryDTO.class), any(), any(), eq(pageSize + 1))).thenReturn(orders);
+        when(orderDetailMapper.getByOrderIds(anyList())).thenReturn(details(orders.subList(0, pageSize)));
+
+        OrdersPageQueryDTO dto = new OrdersPageQueryDTO();
+        dto.setPageSize(pageSize);
+        CursorPageResult result = orderService.conditionSearchByCursor(dto);
+
+        verify(orderMapper, times(1)).cursorQuery(any(OrdersPageQueryDTO.class), any(), any(), anyInt());
+        verify(orderMapper, never()).pageQuery(any(OrdersPageQueryDTO.class));
+        verify(orderDetailMapper, times(1)).getByOrderIds(anyList());
+        verify(orderDetailMapper, never()).getByOrderId(anyLong());
+        assertDetailsGrouped(orders.subList(0, pageSize), (List<OrderVO>) result.getRecords());
+    }
+
+    @Test
+    void emptyPageSkipsDetailQuery() {
+        when(orderMapper.pageQuery(any(OrdersPageQueryDTO.class))).thenReturn(Collections.emptyList());
+
+        OrdersPageQueryDTO dto = new OrdersPageQueryDTO();
+        dto.setPage(1);
+        dto.setPageSize(10);
+        orderService.conditionSearch(dto);
+
+        verify(orderDetailMapper, never()).getByOrderIds(anyList());
+        verify(orderDetailMapper, never()).getByOrderId(anyLong());
+    }
+
+    @Test
+    void cancelByAdminLocksOnceAndUpdatesOnce() {
+        when(orderMapper.getStatusForUpdate(1L)).thenReturn(Orders.builder().id(1L).userId(100L).status(Orders.CONFIRMED).build());
+        when(orderMapper.updateStatus(any(Orders.class), anyList(), eq(true))).thenReturn(1);
+
+        OrdersCancelDTO dto = new OrdersCancelDTO();
+        dto.setId(1L);
+        dto.setCancelReason("菜品已售完");
+        orderService.cancelByAdmin(dto);
+
+        // 一次加锁读取，一条带全部允许状态的update
+        verify(orderMapper, times(1)).getStatusForUpdate(1L);
+        verify(orderMapper, never()).getById(anyLong());
+        verify(orderMapper, times(1)).updateStatus(any(Orders.class), eq(Arrays.asList(Orders.PENDING_PAYMENT,
+                Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS)), eq(true));
+        verify(orderStatusCounter).moved(Orders.CONFIRMED, Orders.CANCELLED, 1);
+        verify(orderNotifier).statusChanged(1L, 100L, Orders.CANCELLED);
+    }
+
+    @Test
+    void cancelOrderRejectsOtherUsersOrder() {
+        BaseContext.setCurrentId(200L);
+        when(orderMapper.getStatusForUpdate(1L)).thenReturn(Orders.builder().id(1L).userId(100L).status(Orders.TO_BE_CONFIRMED).build());
+
+        OrderBusinessException e = assertThrows(OrderBusinessException.class, () -> orderService.cancelOrder(1L));
+
+        assertEquals(MessageConstant.ORDER_NOT_FOUND, e.getMessage());
+        verify(orderMapper, never()).updateStatus(any(Orders.class), anyList(), anyBoolean());
+    }
+
+    @Test
+    void transitionRejectsDisallowedStatusWithoutUpdate() {
+        when(orderMapper.getStatusForUpdate(1L)).thenReturn(Orders.builder().id(1L).userId(100L).status(Orders.COMPLETED).build());
+
+        OrdersCancelDTO dto = new OrdersCancelDTO();
+        dto.setId(1L);
+        assertThrows(OrderBusinessException.class, () -> orderService.cancelByAdmin(dto));
+
+        verify(orderMapper, never()).updateStatus(any(Orders.class), anyList(), anyBoolean());
+        verify(orderStatusCounter, never()).moved(any(), any(), anyLong());
+    }
+
+    @Test
+    void singleSourceTransitionSkipsRead() {
+        when(orderMapper.updateStatus(any(Orders.class), eq(Collections.singletonList(Orders.CONFIRMED)), eq(false)))
+                .thenReturn(1);
+
+        orderService.delivery(1L);
+
+        verify(orderMapper, never()).getById(anyLong());
+        verify(orderMapper, times(1)).updateStatus(any(Orders.class), anyList(), anyBoolean());
+        verify(orderStatusCounter).moved(Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS, 1);
+    }
+
+    private static List<Orders> orders(int count) {
+        List<Orders> orders = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (long id = 1; id <= count; id++) {
+            orders.add(Orders.builder().id(id).orderTime(now.minusMinutes(id)).build());
+        }
+        return orders;
+    }
+
+    /**
+     * 每个订单两条明细
+     */
+    private static List<OrderDetail> details(List<Orders> orders) {
+        List<OrderDetail> details = new ArrayList<>();
+        for (Orders order : orders) {
+            details.add(OrderDetail.builder().orderId(order.getId()).name("菜品A" + order.getId()).number(1).build());
+            details.add(OrderDetail.builder().orderId(order.getId()).name("菜品B" + order.getId()).number(2).build());
+        }
+        return details;
+    }
+
+    private static void assertDetailsGrouped(List<Orders> orders, List<OrderVO> records) {
+        assertEquals(orders.size(), records.size());
+        for (int i = 0; i < orders.size(); i++) {
+            OrderVO orderVO = records.get(i);
+            assertEquals(orders.get(i).getId(), orderVO.getId());
+            assertEquals(2, orderVO.getOrderDetailList().size());
+            assertEquals("菜品A" + orderVO.getId() + "*1;菜品B" + orderVO.getId() + "*2;", orderVO.getOrderDishes());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.sky.task;
+
+import com.sky.properties.JobLeaseProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JobLeaseManagerTest {
+
+    private static final String JOB = "order:status_count";
+
+    private JobLeaseManager jobLeaseManager;
+    private JobLeaseProperties properties;
+    private StringRedisTemplate stringRedisTemplate;
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        properties = new JobLeaseProperties();
+        jobLeaseManager = new JobLeaseManager();
+        ReflectionTestUtils.setField(jobLeaseManager, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(jobLeaseManager, "jobLeaseProperties", properties);
+        jobLeaseManager.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobLeaseManager.destroy();
+    }
+
+    @Test
+    void keptLeaseBlocksLateTriggerOfSameTick() {
+        properties.setRedisEnabled(false);
+
+        JobLeaseManager.Lease lease = jobLeaseManager.tryAcquire(JOB, 60000);
+        assertNotNull(lease);
+        jobLeaseManager.finish(lease, false);
+
+        // 任务已经执行完，触发稍晚的节点不能再执行同一次触发
+        assertNull(jobLeaseManager.tryAcquire(JOB, 60000));
+    }
+
+    @Test
+    void releasedLeaseCanBeAcquiredAgain() {
+        properties.setRedisEnabled(false);
+
+        JobLeaseManager.Lease lease = jobLeaseManager.tryAcquire(JOB, 60000);
+        assertNotNull(lease);
+        jobLeaseManager.finish(lease, true);
+
+        assertNotNull(jobLeaseManager.tryAcquire(JOB, 60000));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void keptRedisLeaseIsNotDeleted() {
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(eq("job:lease:" + JOB), anyString(), eq(Duration.ofMillis(60000))))
+                .thenReturn(true);
+
+        JobLeaseManager.Lease lease = jobLeaseManager.tryAcquire(JOB, 60000);
+        assertNotNull(lease);
+        jobLeaseManager.finish(lease, false);
+
+        // 不执行释放脚本，key由PX自然过期
+        verify(stringRedisTemplate, never()).execute(any(), anyList(), any());
+    }
+}
@@ -0,0 +1,108 @@
+package com.sky.websocket;
+
+import com.sky.constant.JwtClaimsConstant;
+import com.sky.properties.JwtProperties;
+import com.sky.properties.WebSocketProperties;
+import com.sky.utils.JwtUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.websocket.HandshakeResponse;
+import javax.websocket.server.HandshakeRequest;
+import javax.websocket.server.ServerEndpointConfig;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WebSocketAuthConfiguratorTest {
+
+    private static final String ADMIN_SECRET = "admin-secret-key-for-websocket-test";
+    private static final String USER_SECRET = "user-secret-key-for-websocket-test";
+
+    private final WebSocketAuthConfigurator configurator = new WebSocketAuthConfigurator();
+    private WebSocketProperties webSocketProperties;
+
+    @BeforeEach
+    void setUp() {
+        JwtProperties jwtProperties = new JwtProperties();
+        jwtProperties.setAdminSecretKey(ADMIN_SECRET);
+        jwtProperties.setAdminTokenName("token");
+        jwtProperties.setUserSecretKey(USER_SECRET);
+        jwtProperties.setUserTokenName("authentication");
+        webSocketProperties = new WebSocketProperties();
+        // 兼容模式：未携带令牌时按商家端处理
+        webSocketProperties.setRequireToken(false);
+        configurator.setJwtProperties(jwtProperties);
+        configurator.setWebSocketProperties(webSocketProperties);
+    }
+
+    @Test
+    void noTokenFallsBackToShop() {
+        Map<String, Object> properties = handshake(Collections.emptyMap());
+
+        assertEquals(WebSocketAuthConfigurator.ROLE_SHOP, properties.get(WebSocketAuthConfigurator.ROLE));
+    }
+
+    @Test
+    void noTokenRejectedWhenTokenRequired() {
+        webSocketProperties.setRequireToken(true);
+
+        Map<String, Object> properties = handshake(Collections.emptyMap());
+
+        assertNull(properties.get(WebSocketAuthConfigurator.ROLE));
+    }
+
+    @Test
+    void validUserTokenGetsUserRole() {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(JwtClaimsConstant.USER_ID, 100L);
+        String token = JwtUtil.createJWT(USER_SECRET, 60000, claims);
+
+        Map<String, Object> properties = handshake(Collections.singletonMap("authentication", token));
+
+        assertEquals(WebSocketAuthConfigurator.ROLE_USER, properties.get(WebSocketAuthConfigurator.ROLE));
+        assertEquals(100L, properties.get(WebSocketAuthConfigurator.USER_ID));
+    }
+
+    @Test
+    void forgedAdminTokenDoesNotFallBackToShop() {
+        String token = JwtUtil.createJWT("another-secret-key-not-the-admin-one", 60000, new HashMap<>());
+
+        Map<String, Object> properties = handshake(Collections.singletonMap("token", token));
+
+        assertNull(properties.get(WebSocketAuthConfigurator.ROLE));
+    }
+
+    @Test
+    void expiredUserTokenDoesNotFallBackToShop() {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(JwtClaimsConstant.USER_ID, 100L);
+        String token = JwtUtil.createJWT(USER_SECRET, -60000, claims);
+
+        Map<String, Object> properties = handshake(Collections.singletonMap("authentication", token));
+
+        assertNull(properties.get(WebSocketAuthConfigurator.ROLE));
+        assertNull(properties.get(WebSocketAuthConfigurator.USER_ID));
+    }
+
+    private Map<String, Object> handshake(Map<String, String> parameters) {
+        Map<String, List<String>> parameterMap = new HashMap<>();
+        parameters.forEach((name, value) -> parameterMap.put(name, Collections.singletonList(value)));
+        HandshakeRequest request = mock(HandshakeRequest.class);
+        when(request.getParameterMap()).thenReturn(parameterMap);
+        when(request.getHeaders()).thenReturn(Collections.emptyMap());
+
+        Map<String, Object> userProperties = new HashMap<>();
+        ServerEndpointConfig config = mock(ServerEndpointConfig.class);
+        when(config.getUserProperties()).thenReturn(userProperties);
+
+        configurator.modifyHandshake(config, request, mock(HandshakeResponse.class));
+        return userProperties;
+    }
+}
@@ -0,0 +1,140 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * 两个节点通过同一个Redis发布订阅转发WebSocket消息
+ * Redis用StringRedisTemplate的替身代替：发布的消息同步投递给所有订阅的节点（包括发出消息的节点本身）
+ */
+class WebSocketClusterBusTest {
+
+    private final List<WebSocketClusterBus> subscribers = new CopyOnWriteArrayList<>();
+
+    private WebSocketProperties properties;
+    private StringRedisTemplate redis;
+
+    private WebSocketDispatcher dispatcherA;
+    private WebSocketDispatcher dispatcherB;
+    private WebSocketReplayBuffer replayA;
+    private WebSocketReplayBuffer replayB;
+    private WebSocketClusterBus busA;
+    private WebSocketClusterBus busB;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WebSocketProperties();
+        properties.setClusterEnabled(true);
+
+        redis = mock(StringRedisTemplate.class);
+        doAnswer(invocation -> {
+            String channel = invocation.getArgument(0);
+            String body = invocation.getArgument(1);
+            DefaultMessage message = new DefaultMessage(channel.getBytes(StandardCharsets.UTF_8),
+                    body.getBytes(StandardCharsets.UTF_8));
+            for (WebSocketClusterBus subscriber : subscribers) {
+                subscriber.onMessage(message, null);
+            }
+            return 2L;
+        }).when(redis).convertAndSend(eq(WebSocketClusterBus.CHANNEL), anyString());
+
+        dispatcherA = mock(WebSocketDispatcher.class);
+        dispatcherB = mock(WebSocketDispatcher.class);
+        replayA = mock(WebSocketReplayBuffer.class);
+        replayB = mock(WebSocketReplayBuffer.class);
+        busA = node(dispatcherA, replayA);
+        busB = node(dispatcherB, replayB);
+    }
+
+    private WebSocketClusterBus node(WebSocketDispatcher dispatcher, WebSocketReplayBuffer replayBuffer) {
+        WebSocketClusterBus bus = new WebSocketClusterBus();
+        ReflectionTestUtils.setField(bus, "webSocketDispatcher", dispatcher);
+        ReflectionTestUtils.setField(bus, "webSocketReplayBuffer", replayBuffer);
+        ReflectionTestUtils.setField(bus, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(bus, "webSocketProperties", properties);
+        subscribers.add(bus);
+        return bus;
+    }
+
+    @Test
+    void publishReachesOtherNodeWithoutEcho() {
+        busA.publish("user:100", "{\"seq\":1}");
+
+        // 发出节点只在本地投递一次，收到自己的转发时忽略
+        verify(dispatcherA, times(1)).publish("user:100", "{\"seq\":1}");
+        verify(replayA, never()).recordFrame(anyString(), anyString());
+        // 另一个节点投递给本节点订阅了该频道的连接，并记录用于重放
+        verify(dispatcherB, times(1)).publish("user:100", "{\"seq\":1}");
+        verify(replayB, times(1)).recordFrame("user:100", "{\"seq\":1}");
+        verify(dispatcherB, never()).broadcast(anyString());
+        verify(dispatcherB, never()).send(anyString(), anyString());
+    }
+
+    @Test
+    void broadcastReachesOtherNodeWithoutEcho() {
+        busB.broadcast("hello");
+
+        verify(dispatcherB, times(1)).broadcast("hello");
+        verify(dispatcherA, times(1)).broadcast("hello");
+        verify(dispatcherA, never()).publish(anyString(), anyString());
+        verify(dispatcherA, never()).send(anyString(), anyString());
+    }
+
+    @Test
+    void sendToRemoteSidIsForwarded() {
+        when(dispatcherA.send("sid-on-b", "msg")).thenReturn(false);
+        when(dispatcherB.send("sid-on-b", "msg")).thenReturn(true);
+
+        assertFalse(busA.send("sid-on-b", "msg"));
+
+        // A本地尝试一次后转发，收到自己的转发时不再重复投递
+        verify(dispatcherA, times(1)).send("sid-on-b", "msg");
+        verify(dispatcherB, times(1)).send("sid-on-b", "msg");
+        verify(dispatcherB, never()).publish(anyString(), anyString());
+        verify(dispatcherB, never()).broadcast(anyString());
+    }
+
+    @Test
+    void sendToLocalSidIsNotForwarded() {
+        when(dispatcherA.send("sid-on-a", "msg")).thenReturn(true);
+
+        assertTrue(busA.send("sid-on-a", "msg"));
+
+        verify(redis, never()).convertAndSend(anyString(), any());
+        verifyNoInteractions(dispatcherB);
+    }
+
+    @Test
+    void clusterDisabledStaysLocal() {
+        properties.setClusterEnabled(false);
+
+        busA.publish("shop", "order");
+        busA.broadcast("hello");
+
+        verify(dispatcherA).publish("shop", "order");
+        verify(dispatcherA).broadcast("hello");
+        verify(redis, never()).convertAndSend(anyString(), any());
+        verifyNoInteractions(dispatcherB, replayB);
+    }
+}
@@ -0,0 +1,86 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class WebSocketCoalescerTest {
+
+    private final List<String> frames = new CopyOnWriteArrayList<>();
+    private final List<String> senderThreads = new CopyOnWriteArrayList<>();
+
+    private WebSocketCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        WebSocketProperties properties = new WebSocketProperties();
+        properties.setCoalesceWindowMillis(300);
+        properties.setCoalesceMaxBatch(3);
+
+        WebSocketServer webSocketServer = mock(WebSocketServer.class);
+        doAnswer(invocation -> {
+            frames.add(invocation.getArgument(1));
+            senderThreads.add(Thread.currentThread().getName());
+            return null;
+        }).when(webSocketServer).sendToChannel(anyString(), anyString());
+
+        coalescer = new WebSocketCoalescer();
+        ReflectionTestUtils.setField(coalescer, "webSocketServer", webSocketServer);
+        ReflectionTestUtils.setField(coalescer, "webSocketProperties", properties);
+        coalescer.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.destroy();
+    }
+
+    @Test
+    void windowFlushesMessagesAsOneFrame() throws Exception {
+        coalescer.submit("shop", "{\"id\":1}");
+        coalescer.submit("shop", "{\"id\":2}");
+        Thread.sleep(100);
+        assertEquals(0, frames.size());
+
+        waitForFrames(1, 1000);
+        assertEquals("[{\"id\":1},{\"id\":2}]", frames.get(0));
+    }
+
+    @Test
+    void fullBatchFlushesOnCoalescerThreadAndCancelsWindowTimer() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            coalescer.submit("shop", "{\"id\":" + i + "}");
+        }
+        waitForFrames(1, 1000);
+        assertEquals("[{\"id\":1},{\"id\":2},{\"id\":3}]", frames.get(0));
+        // 提前发送不在提交消息的线程中执行
+        assertEquals("ws-coalescer", senderThreads.get(0));
+
+        // 200毫秒后开启新窗口：被提前发送的窗口的定时器已取消，不会在300毫秒时把新窗口提前发出
+        Thread.sleep(200);
+        coalescer.submit("shop", "{\"id\":4}");
+        Thread.sleep(200);
+        assertEquals(1, frames.size());
+
+        waitForFrames(2, 1000);
+        assertEquals("{\"id\":4}", frames.get(1));
+    }
+
+    private void waitForFrames(int count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (frames.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, frames.size());
+    }
+}
@@ -0,0 +1,136 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebSocketDispatcherTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private WebSocketDispatcher dispatcher;
+    private WebSocketProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WebSocketProperties();
+        properties.setSenderThreads(1);
+        properties.setHeartbeatThreads(1);
+        // 每次心跳检查都会ping所有连接，且不会因为没有回应被回收
+        properties.setHeartbeatIntervalMillis(0);
+        properties.setMaxMissedPongs(100);
+
+        dispatcher = new WebSocketDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "webSocketProperties", properties);
+        dispatcher.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        dispatcher.destroy();
+    }
+
+    @Test
+    void blockedPingDoesNotDelayMessages() throws Exception {
+        RemoteEndpoint.Async remote = session("sid-1", WebSocketDispatcher.SHOP_CHANNEL);
+        CountDownLatch pingStarted = new CountDownLatch(1);
+        // 模拟半开连接：ping一直阻塞到测试结束
+        doAnswer(invocation -> {
+            pingStarted.countDown();
+            release.await();
+            return null;
+        }).when(remote).sendPing(any(ByteBuffer.class));
+
+        dispatcher.heartbeat();
+        assertTrue(pingStarted.await(1, TimeUnit.SECONDS));
+
+        dispatcher.publish(WebSocketDispatcher.SHOP_CHANNEL, "order");
+        verify(remote, timeout(1000)).sendText(eq("order"), any(SendHandler.class));
+
+        // ping还在阻塞时，后续心跳不再为同一连接排队
+        dispatcher.heartbeat();
+        dispatcher.heartbeat();
+        Thread.sleep(100);
+        verify(remote, times(1)).sendPing(any(ByteBuffer.class));
+    }
+
+    @Test
+    void slowConsumerDisconnectClosesOffPublishingThread() throws Exception {
+        properties.setSlowConsumerPolicy(WebSocketProperties.POLICY_DISCONNECT);
+        properties.setQueueCapacity(1);
+
+        Session session = mock(Session.class);
+        RemoteEndpoint.Async remote = mock(RemoteEndpoint.Async.class);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getAsyncRemote()).thenReturn(remote);
+        // 发送一直没有回调，后面的消息在队列中积压
+        CountDownLatch sendStarted = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            sendStarted.countDown();
+            return null;
+        }).when(remote).sendText(any(String.class), any(SendHandler.class));
+        // 模拟半开连接：关闭一直阻塞到测试结束
+        CountDownLatch closeStarted = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            closeStarted.countDown();
+            release.await();
+            return null;
+        }).when(session).close(any(CloseReason.class));
+        assertTrue(dispatcher.register("sid-1", session, Collections.singletonList(WebSocketDispatcher.SHOP_CHANNEL)));
+
+        dispatcher.publish(WebSocketDispatcher.SHOP_CHANNEL, "order-1");
+        assertTrue(sendStarted.await(1, TimeUnit.SECONDS));
+        // 第二条进入队列，第三条超过容量触发断开，关闭阻塞也不能卡住推送线程
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+            dispatcher.publish(WebSocketDispatcher.SHOP_CHANNEL, "order-2");
+            dispatcher.publish(WebSocketDispatcher.SHOP_CHANNEL, "order-3");
+        });
+
+        assertEquals(0, dispatcher.getConnectionCount());
+        assertTrue(closeStarted.await(1, TimeUnit.SECONDS));
+        // 已移出频道索引，后续消息不再投递给这个连接
+        dispatcher.publish(WebSocketDispatcher.SHOP_CHANNEL, "order-4");
+        verify(remote, never()).sendText(eq("order-4"), any(SendHandler.class));
+    }
+
+    private RemoteEndpoint.Async session(String sid, String channel) {
+        Session session = mock(Session.class);
+        RemoteEndpoint.Async remote = mock(RemoteEndpoint.Async.class);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getAsyncRemote()).thenReturn(remote);
+        doAnswer(invocation -> {
+            SendHandler handler = invocation.getArgument(1);
+            handler.onResult(new SendResult());
+            return null;
+        }).when(remote).sendText(any(String.class), any(SendHandler.class));
+        assertTrue(dispatcher.register(sid, session, Collections.singletonList(channel)));
+        return remote;
+    }
+}
@@ -0,0 +1,205 @@
+package com.sky.websocket;
+
+import com.sky.properties.SnowflakeProperties;
+import com.sky.properties.WebSocketProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebSocketReplayBufferTest {
+
+    private static final String CHANNEL = "shop";
+
+    /**
+     * 2026-01-01 00:00:00 UTC
+     */
+    private static final long NOW = 1767225600000L;
+
+    private final List<WebSocketReplayBuffer> buffers = new ArrayList<>();
+    private WebSocketProperties properties;
+    private StringRedisTemplate stringRedisTemplate;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WebSocketProperties();
+        properties.setClusterEnabled(false);
+        properties.setReplayBufferSize(3);
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        buffers.forEach(WebSocketReplayBuffer::destroy);
+    }
+
+    @Test
+    void localSeqKeepsIncreasingAcrossRestart() {
+        long[] clock = {NOW};
+        WebSocketReplayBuffer before = buffer(1, clock);
+        long last = 0;
+        for (int i = 0; i < 10; i++) {
+            long seq = before.nextSeq();
+            assertTrue(seq > last);
+            last = seq;
+        }
+
+        // 重启后本地序号从时钟重新开始，仍然大于重启前发出的序号
+        clock[0] = NOW + 1;
+        WebSocketReplayBuffer after = buffer(1, clock);
+        assertTrue(after.nextSeq() > last);
+    }
+
+    @Test
+    void fallbackSeqsDoNotCollideAcrossNodes() {
+        properties.setClusterEnabled(true);
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any()))
+                .thenThrow(new RedisConnectionFailureException("down"));
+        long[] clock = {NOW};
+        WebSocketReplayBuffer nodeA = buffer(1, clock);
+        WebSocketReplayBuffer nodeB = buffer(2, clock);
+
+        Set<Long> seqs = new HashSet<>();
+        long lastA = 0;
+        long lastB = 0;
+        for (int i = 0; i < 100; i++) {
+            long seqA = nodeA.nextSeq();
+            long seqB = nodeB.nextSeq();
+            assertTrue(seqA > lastA);
+            assertTrue(seqB > lastB);
+            seqs.add(seqA);
+            seqs.add(seqB);
+            lastA = seqA;
+            lastB = seqB;
+        }
+        assertEquals(200, seqs.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void clusterSeqFloorIsClockAndLargestSeenSeq() {
+        properties.setClusterEnabled(true);
+        long[] clock = {NOW};
+        WebSocketReplayBuffer buffer = buffer(1, clock);
+        long clockSeq = (NOW - 1704067200000L) << 12;
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any())).thenReturn(clockSeq + 5);
+
+        assertEquals(clockSeq + 5, buffer.nextSeq());
+        verify(stringRedisTemplate).execute(any(RedisScript.class), eq(Collections.singletonList("ws:event_seq")),
+                eq(String.valueOf(clockSeq)));
+
+        // 其他节点转发过来的序号更大，下一次分配不能比它小
+        buffer.recordFrame(CHANNEL, "{\"seq\":" + (clockSeq + 100) + ",\"type\":1}");
+        buffer.nextSeq();
+        verify(stringRedisTemplate).execute(any(RedisScript.class), eq(Collections.singletonList("ws:event_seq")),
+                eq(String.valueOf(clockSeq + 101)));
+    }
+
+    @Test
+    void ringReplaysMessagesInSeqOrder() {
+        WebSocketReplayBuffer buffer = buffer(1, new long[]{NOW});
+
+        // 集群中消息到达顺序可能和序号不一致
+        buffer.record(CHANNEL, 5, "m5");
+        buffer.record(CHANNEL, 7, "m7");
+        buffer.record(CHANNEL, 6, "m6");
+
+        assertEquals(Arrays.asList("m6", "m7"), buffer.since(CHANNEL, 5));
+        assertEquals(Collections.emptyList(), buffer.since(CHANNEL, 7));
+    }
+
+    @Test
+    void ringDropsOldestBeyondCapacity() {
+        WebSocketReplayBuffer buffer = buffer(1, new long[]{NOW});
+        for (long seq = 1; seq <= 5; seq++) {
+            buffer.record(CHANNEL, seq, "m" + seq);
+        }
+
+        assertEquals(Arrays.asList("m3", "m4", "m5"), buffer.since(CHANNEL, 2));
+        // 序号1、2已被覆盖，没有开启Stream时只能补发内存中剩下的消息
+        assertEquals(Arrays.asList("m3", "m4", "m5"), buffer.since(CHANNEL, 0));
+    }
+
+    @Test
+    void recordFrameStoresMergedEvents() {
+        WebSocketReplayBuffer buffer = buffer(1, new long[]{NOW});
+
+        buffer.recordFrame(CHANNEL, "[{\"seq\":10,\"type\":1},{\"seq\":11,\"type\":2},{\"type\":3}]");
+
+        List<String> missed = buffer.since(CHANNEL, 9);
+        assertEquals(2, missed.size());
+        assertTrue(missed.get(0).contains("\"seq\":10"));
+        assertTrue(missed.get(1).contains("\"seq\":11"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void replayFallsBackToStreamWhenRingIsIncomplete() {
+        properties.setReplayStreamEnabled(true);
+        StreamOperations<String, Object, Object> streamOperations = mock(StreamOperations.class);
+        when(stringRedisTemplate.opsForStream()).thenReturn(streamOperations);
+        // 各节点写入Stream的顺序和序号不一致
+        when(streamOperations.range(eq("ws:events:" + CHANNEL), any(Range.class)))
+                .thenReturn(Arrays.asList(streamRecord(3, "m3"), streamRecord(2, "m2"), streamRecord(1, "m1")));
+        WebSocketReplayBuffer buffer = buffer(1, new long[]{NOW});
+        for (long seq = 3; seq <= 6; seq++) {
+            buffer.record(CHANNEL, seq, "m" + seq);
+        }
+
+        // 内存中只剩4~6，客户端最后收到1，从Stream补发
+        assertEquals(Arrays.asList("m2", "m3"), buffer.since(CHANNEL, 1));
+        // 内存中的消息完整时不读Stream
+        assertEquals(Arrays.asList("m5", "m6"), buffer.since(CHANNEL, 4));
+        verify(streamOperations).range(anyString(), any(Range.class));
+    }
+
+    private WebSocketReplayBuffer buffer(long workerId, long[] clock) {
+        SnowflakeProperties snowflakeProperties = new SnowflakeProperties();
+        snowflakeProperties.setWorkerId(workerId);
+        WebSocketReplayBuffer buffer = new WebSocketReplayBuffer() {
+            @Override
+            protected long currentTimeMillis() {
+                return clock[0];
+            }
+        };
+        ReflectionTestUtils.setField(buffer, "webSocketProperties", properties);
+        ReflectionTestUtils.setField(buffer, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(buffer, "snowflakeProperties", snowflakeProperties);
+        buffer.init();
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    private static MapRecord<String, Object, Object> streamRecord(long seq, String message) {
+        Map<Object, Object> fields = new HashMap<>();
+        fields.put("seq", String.valueOf(seq));
+        fields.put("message", message);
+        return StreamRecords.newRecord().in("ws:events:" + CHANNEL).ofMap(fields);
+    }
+}